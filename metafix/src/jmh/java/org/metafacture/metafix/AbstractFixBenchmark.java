@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.flowcontrol.StreamBuffer;
+import org.metafacture.framework.StreamReceiver;
+import org.metafacture.framework.helpers.DefaultStreamReceiver;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a single Fix over an in-memory corpus of MARC-like records (or, as
+ * provided by {@link #writeRecord(StreamReceiver, int, int) subclasses},, of
+ * other shapes). The corpus is generated once per trial, so that only the Fix
+ * engine (record building, transformation and emission) is measured.
+ *
+ * The {@code size} parameter controls the number of repeated fields
+ * (subjects, contributors, notes) per record.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public abstract class AbstractFixBenchmark extends AbstractBenchmark {
+
+    private static final String FIXES = FixParseBenchmark.BASE + "/fixes/%s" + Metafix.FIX_EXTENSION;
+
+    protected static final int GND_BASE = 4000000;
+    protected static final int RECORDS = 100;
+
+    private static final String[] ROLES = {"aut", "edt", "ill", "trl"};
+    private static final String[] SOURCES = {"gnd", "lcsh"};
+
+    @Param({ // checkstyle-disable-line AnnotationUseStyle
+        "1",
+        "10",
+        "100"
+    })
+    private int size;
+
+    private StreamBuffer corpus;
+
+    public AbstractFixBenchmark() {
+    }
+
+    protected abstract String getFixDef();
+
+    @Setup
+    public void setup() {
+        final Metafix metafix;
+        try {
+            metafix = new Metafix(String.format(FIXES, getFixDef()));
+        }
+        catch (final FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        metafix.setReceiver(new DefaultStreamReceiver());
+
+        corpus = new StreamBuffer();
+        corpus.setReceiver(metafix);
+
+        for (int i = 0; i < RECORDS; ++i) {
+            writeRecord(corpus, i, size);
+        }
+    }
+
+    @Override
+    protected void workload() {
+        corpus.replay();
+    }
+
+    /**
+     * Writes a record of the corpus.
+     *
+     * @param receiver the receiver
+     * @param id the record number
+     * @param repetitions the number of repeated fields
+     */
+    protected void writeRecord(final StreamReceiver receiver, final int id, final int repetitions) {
+        receiver.startRecord(String.valueOf(id));
+        receiver.literal("001", String.format("%09d", id));
+        receiver.literal("leader", "00000nam a2200000 c 4500");
+
+        subfields(receiver, "020  ", "a", "978-3-16-148410-0");
+        subfields(receiver, "100 1", "a", "Doe, Jane", "d", "1970-", "4", "aut");
+        subfields(receiver, "245 10", "a", "Title " + id + " :", "b", "a subtitle /", "c", "by Jane Doe and others.");
+        subfields(receiver, "264 1", "a", "Cologne", "b", "Publisher", "c", "20" + id % RECORDS + " [print]");
+
+        for (int i = 0; i < repetitions; ++i) {
+            subfields(receiver, "650 7", "a", "Subject " + (id + i) % RECORDS, "0", "(DE-588)" + (GND_BASE + i), "2", SOURCES[i % SOURCES.length]);
+            subfields(receiver, "700 1", "a", "Contributor " + i + ", A.", "4", ROLES[i % ROLES.length]);
+            subfields(receiver, "500  ", "a", "  Note " + i + " with surrounding whitespace  ");
+        }
+
+        receiver.endRecord();
+    }
+
+    private void subfields(final StreamReceiver receiver, final String field, final String... codesAndValues) {
+        receiver.startEntity(field);
+
+        for (int i = 0; i < codesAndValues.length; i += 2) {
+            receiver.literal(codesAndValues[i], codesAndValues[i + 1]);
+        }
+
+        receiver.endEntity();
+    }
+
+}
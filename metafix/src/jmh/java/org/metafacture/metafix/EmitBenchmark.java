@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.framework.StreamReceiver;
+import org.metafacture.framework.helpers.DefaultStreamReceiver;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sending a transformed record to the receiver. Run with the GC
+ * profiler ({@code -prof gc}) to compare the allocation rate
+ * ({@code gc.alloc.rate.norm}) of {@link Metafix#emitRecord(String, Record)}
+ * against the {@code legacy} implementation, which is retained here as the
+ * baseline.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmitBenchmark extends AbstractBenchmark {
+
+    private static final String ID = "1";
+
+    @Param({ // checkstyle-disable-line AnnotationUseStyle
+        "10",
+        "100",
+        "1000"
+    })
+    private int fields;
+
+    @Param({ // checkstyle-disable-line AnnotationUseStyle
+        "false",
+        "true"
+    })
+    private boolean repeatedFieldsToEntities;
+
+    @Param({ // checkstyle-disable-line AnnotationUseStyle
+        "false",
+        "true"
+    })
+    private boolean legacy;
+
+    private Metafix metafix;
+    private Record record;
+    private StreamReceiver receiver;
+
+    public EmitBenchmark() {
+    }
+
+    @Setup
+    public void setup() {
+        receiver = new DefaultStreamReceiver();
+
+        metafix = new Metafix();
+        metafix.setReceiver(receiver);
+        metafix.setRepeatedFieldsToEntities(repeatedFieldsToEntities);
+
+        record = new Record();
+
+        for (int i = 0; i < fields; ++i) {
+            final String field = "field" + i;
+            final String value = "value" + i;
+
+            switch (i % 4) { // checkstyle-disable-line MagicNumber
+                case 0:
+                    record.put(field, new Value(value));
+                    break;
+                case 1:
+                    record.put(field, Value.newArray(a -> {
+                        a.add(new Value(value));
+                        a.add(new Value(value));
+                    }));
+                    break;
+                case 2:
+                    record.put(field + Metafix.ARRAY_MARKER, Value.newArray(a -> {
+                        a.add(Value.newHash(h -> h.put("a", new Value(value))));
+                        a.add(Value.newHash(h -> h.put("b", new Value(value))));
+                    }));
+                    break;
+                default:
+                    record.put(field, Value.newHash(h -> {
+                        h.put("a", new Value(value));
+                        h.put("b", Value.newArray(a -> a.add(new Value(value))));
+                    }));
+                    break;
+            }
+        }
+    }
+
+    @Override
+    protected void workload() {
+        if (legacy) {
+            receiver.startRecord(ID);
+            record.forEach(this::legacyEmit);
+            receiver.endRecord();
+        }
+        else {
+            metafix.emitRecord(ID, record);
+        }
+    }
+
+    // the emit implementation before Metafix#emitRecord(String, Record)
+    private void legacyEmit(final String field, final Value value) {
+        Value.asList(value, array -> {
+            final boolean isMulti = repeatedFieldsToEntities && array.size() > 1 || field.endsWith(Metafix.ARRAY_MARKER);
+            if (isMulti) {
+                receiver.startEntity(field);
+            }
+
+            for (int i = 0; i < array.size(); ++i) {
+                final Value currentValue = array.get(i);
+                final String fieldName = isMulti ? String.valueOf(i + 1) : field;
+
+                currentValue.matchType()
+                    .ifArray(a -> legacyEmit(isMulti ? fieldName + Metafix.ARRAY_MARKER : fieldName, currentValue))
+                    .ifHash(h -> {
+                        receiver.startEntity(fieldName);
+                        h.forEach(this::legacyEmit);
+                        receiver.endEntity();
+                    })
+                    .ifString(s -> receiver.literal(fieldName, s));
+            }
+
+            if (isMulti) {
+                receiver.endEntity();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.openjdk.jmh.annotations.Param;
+
+public class FixConditionalBenchmark extends AbstractFixBenchmark {
+
+    @Param({ // checkstyle-disable-line AnnotationUseStyle
+        "if_all_match",
+        "if_any_contain",
+        "if_any_equal",
+        "if_any_match",
+        "if_exists",
+        "if_is_empty",
+        "if_none_match",
+        "unless_exists"
+    })
+    private String fixDef;
+
+    public FixConditionalBenchmark() {
+    }
+
+    @Override
+    protected String getFixDef() {
+        return fixDef;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.openjdk.jmh.annotations.Param;
+
+public class FixMethodBenchmark extends AbstractFixBenchmark {
+
+    @Param({ // checkstyle-disable-line AnnotationUseStyle
+        "nothing",
+        "add_field",
+        "copy_field",
+        "copy_field_wildcard",
+        "do_list",
+        "format",
+        "join_field",
+        "lookup",
+        "lookup_filemap",
+        "lookup_filemap_compact",
+        "lookup_filemap_index",
+        "move_field",
+        "paste",
+        "remove_field",
+        "replace_all",
+        "retain",
+        "split_field",
+        "substring",
+        "trim",
+        "uniq_sort",
+        "upcase",
+        "vacuum"
+    })
+    private String fixDef;
+
+    public FixMethodBenchmark() {
+    }
+
+    @Override
+    protected String getFixDef() {
+        return fixDef;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.framework.StreamReceiver;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Runs a single Fix over an in-memory corpus of JSON-LD-like records (as
+ * decoded from JSON, i.e. with {@value Metafix#ARRAY_MARKER} array names):
+ * deeply nested hashes, arrays of hashes and {@code @id}-style keys.
+ */
+public class JsonFixBenchmark extends AbstractFixBenchmark {
+
+    private static final String GND = "https://d-nb.info/gnd/";
+    private static final String RELATORS = "http://id.loc.gov/vocabulary/relators/";
+
+    private static final String[] ROLES = {"aut", "edt", "ill", "trl"};
+    private static final String[] SOURCES = {"GND", "LCSH"};
+
+    @Param({ // checkstyle-disable-line AnnotationUseStyle
+        "json_copy_field",
+        "json_do_list",
+        "json_if_any_match",
+        "json_lookup",
+        "json_move_field",
+        "json_retain"
+    })
+    private String fixDef;
+
+    public JsonFixBenchmark() {
+    }
+
+    @Override
+    protected String getFixDef() {
+        return fixDef;
+    }
+
+    @Override
+    protected void writeRecord(final StreamReceiver receiver, final int id, final int repetitions) {
+        final String resource = "https://lobid.org/resources/" + id;
+
+        receiver.startRecord(String.valueOf(id));
+        receiver.literal("@context", "https://lobid.org/resources/context.jsonld");
+        receiver.literal("id", resource + "#!");
+        literals(receiver, "type[]", "BibliographicResource", "Book");
+        receiver.literal("title", "Title " + id);
+
+        receiver.startEntity("contribution[]");
+        for (int i = 0; i < repetitions; ++i) {
+            final String role = ROLES[i % ROLES.length];
+
+            receiver.startEntity(String.valueOf(i + 1));
+            receiver.startEntity("agent");
+            receiver.literal("@id", GND + (GND_BASE + i));
+            receiver.literal("label", "Contributor " + i + ", A.");
+            literals(receiver, "type[]", "Person");
+            receiver.endEntity();
+            receiver.startEntity("role");
+            receiver.literal("@id", RELATORS + role);
+            receiver.literal("label", role);
+            receiver.endEntity();
+            receiver.endEntity();
+        }
+        receiver.endEntity();
+
+        receiver.startEntity("subject[]");
+        for (int i = 0; i < repetitions; ++i) {
+            receiver.startEntity(String.valueOf(i + 1));
+            receiver.literal("@id", GND + (GND_BASE + (id + i) % RECORDS));
+            receiver.literal("label", "Subject " + (id + i) % RECORDS);
+            receiver.startEntity("source");
+            receiver.literal("@id", GND);
+            receiver.literal("label", SOURCES[i % SOURCES.length]);
+            receiver.endEntity();
+            receiver.endEntity();
+        }
+        receiver.endEntity();
+
+        receiver.startEntity("describedBy");
+        receiver.literal("id", resource);
+        receiver.literal("dateModified", "2022-01-01T00:00:00");
+        receiver.startEntity("inDataset");
+        receiver.literal("id", "https://lobid.org/resources/dataset#!");
+        receiver.endEntity();
+        receiver.endEntity();
+
+        receiver.endRecord();
+    }
+
+    private void literals(final StreamReceiver receiver, final String name, final String... values) {
+        receiver.startEntity(name);
+
+        for (int i = 0; i < values.length; ++i) {
+            receiver.literal(String.valueOf(i + 1), values[i]);
+        }
+
+        receiver.endEntity();
+    }
+
+}
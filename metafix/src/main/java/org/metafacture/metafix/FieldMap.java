@@ -0,0 +1,297 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The insertion-ordered map of field names to values backing a
+ * {@link Value.Hash Hash}. Up to {@value #DEFAULT_THRESHOLD} fields (or as
+ * configured with the system property {@value #THRESHOLD_PROPERTY}), the
+ * fields are kept in parallel arrays and looked up by a linear scan, which
+ * compares by identity first (field names are usually the same instances)
+ * and only then by equality. Larger maps are upgraded to a
+ * {@link LinkedHashMap} for good.
+ *
+ * Iteration order, equality, hash code and string representation are the
+ * same as those of a {@link LinkedHashMap} with the same entries.
+ */
+/*package-private*/ final class FieldMap extends AbstractMap<String, Value> {
+
+    public static final String THRESHOLD_PROPERTY = "org.metafacture.metafix.smallHashSize";
+
+    public static final int DEFAULT_THRESHOLD = 8;
+
+    private static final int THRESHOLD = Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final String[] NO_KEYS = new String[0];
+    private static final Value[] NO_VALUES = new Value[0];
+
+    private final Set<Entry<String, Value>> entrySet = new EntrySet();
+
+    private Map<String, Value> large;
+    private String[] keys = NO_KEYS;
+    private Value[] values = NO_VALUES;
+    private int modCount;
+    private int size;
+
+    /*package-private*/ FieldMap() {
+    }
+
+    /*package-private*/ boolean isLarge() {
+        return large != null;
+    }
+
+    @Override
+    public int size() {
+        return large != null ? large.size() : size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return large != null ? large.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    @Override
+    public Value get(final Object key) {
+        if (large != null) {
+            return large.get(key);
+        }
+
+        final int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    @Override
+    public Value put(final String key, final Value value) {
+        if (large != null) {
+            return large.put(key, value);
+        }
+
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final Value oldValue = values[index];
+            values[index] = value;
+            return oldValue;
+        }
+
+        if (size == THRESHOLD) {
+            upgrade();
+            return large.put(key, value);
+        }
+
+        if (size == keys.length) {
+            final int capacity = Math.min(Math.max(INITIAL_CAPACITY, size * 2), THRESHOLD);
+
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        keys[size] = key;
+        values[size] = value;
+
+        ++size;
+        ++modCount;
+
+        return null;
+    }
+
+    @Override
+    public Value remove(final Object key) {
+        if (large != null) {
+            return large.remove(key);
+        }
+
+        final int index = indexOf(key);
+        return index >= 0 ? removeAt(index) : null;
+    }
+
+    /**
+     * Removes all entries, retaining the capacity (and the upgraded table, if
+     * any).
+     */
+    @Override
+    public void clear() {
+        if (large != null) {
+            large.clear();
+        }
+        else {
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(values, 0, size, null);
+
+            size = 0;
+            ++modCount;
+        }
+    }
+
+    @Override
+    public void forEach(final BiConsumer<? super String, ? super Value> consumer) {
+        if (large != null) {
+            large.forEach(consumer);
+        }
+        else {
+            final int expectedModCount = modCount;
+
+            for (int i = 0; i < size; ++i) {
+                consumer.accept(keys[i], values[i]);
+
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Value>> entrySet() {
+        return entrySet;
+    }
+
+    private int indexOf(final Object key) {
+        for (int i = 0; i < size; ++i) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+
+        if (key != null) {
+            for (int i = 0; i < size; ++i) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private Value removeAt(final int index) {
+        final Value oldValue = values[index];
+        final int moved = size - index - 1;
+
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+
+        --size;
+        ++modCount;
+
+        keys[size] = null;
+        values[size] = null;
+
+        return oldValue;
+    }
+
+    private void upgrade() {
+        large = new LinkedHashMap<>(THRESHOLD * 2);
+
+        for (int i = 0; i < size; ++i) {
+            large.put(keys[i], values[i]);
+        }
+
+        keys = NO_KEYS;
+        values = NO_VALUES;
+        size = 0;
+        ++modCount;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, Value>> {
+
+        private EntrySet() {
+        }
+
+        @Override
+        public Iterator<Entry<String, Value>> iterator() {
+            return large != null ? large.entrySet().iterator() : new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return FieldMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            FieldMap.this.clear();
+        }
+
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Value>> {
+
+        private int expectedModCount = modCount;
+        private int last = -1;
+        private int next;
+
+        private EntryIterator() {
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, Value> next() {
+            checkForComodification();
+
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+
+            last = next++;
+            return new SimpleImmutableEntry<>(keys[last], values[last]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+
+            checkForComodification();
+            removeAt(last);
+
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+    }
+
+}
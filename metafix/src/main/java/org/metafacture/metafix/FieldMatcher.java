@@ -0,0 +1,226 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.commons.tries.SimpleRegexTrie;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches field names against a single field name pattern, which may contain
+ * wildcards ({@code *}, {@code ?}) and character classes ({@code [...]}).
+ *
+ * Matchers are created once per pattern and kept in a bounded cache. Each
+ * matcher caches its match results for a bounded number of field names. Both
+ * caches evict the least recently used entries and are safe for concurrent
+ * use. Their size limits can be configured with the system properties
+ * {@value #PATTERN_CACHE_SIZE_PROPERTY} and {@value #FIELD_CACHE_SIZE_PROPERTY}.
+ */
+public final class FieldMatcher {
+
+    public static final String PATTERN_CACHE_SIZE_PROPERTY = "org.metafacture.metafix.patternCacheSize";
+    public static final String FIELD_CACHE_SIZE_PROPERTY = "org.metafacture.metafix.fieldCacheSize";
+
+    public static final int DEFAULT_PATTERN_CACHE_SIZE = 1000;
+    public static final int DEFAULT_FIELD_CACHE_SIZE = 10000;
+
+    // NOTE: Keep in sync with `WildcardTrie`/`SimpleRegexTrie` implementation in metafacture-core.
+    private static final Pattern WILDCARD_PATTERN = Pattern.compile("[*?]|\\[[^\\]]");
+
+    private static final int FIELD_CACHE_SIZE = Integer.getInteger(FIELD_CACHE_SIZE_PROPERTY, DEFAULT_FIELD_CACHE_SIZE);
+
+    private static final LoadingCache<String, FieldMatcher> CACHE = CacheBuilder.newBuilder()
+        .maximumSize(Integer.getInteger(PATTERN_CACHE_SIZE_PROPERTY, DEFAULT_PATTERN_CACHE_SIZE))
+        .build(CacheLoader.from(FieldMatcher::new));
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private final Cache<String, Boolean> fieldCache;
+    private final SimpleRegexTrie<String> trie;
+    private final String pattern;
+    private final String prefix;
+
+    private FieldMatcher(final String pattern) {
+        final Matcher patternMatcher = WILDCARD_PATTERN.matcher(pattern);
+
+        this.pattern = pattern;
+
+        if (patternMatcher.find()) {
+            prefix = pattern.substring(0, patternMatcher.start());
+
+            trie = new SimpleRegexTrie<>();
+            trie.put(pattern, pattern);
+
+            fieldCache = CacheBuilder.newBuilder().maximumSize(FIELD_CACHE_SIZE).build();
+        }
+        else {
+            prefix = null;
+            trie = null;
+            fieldCache = null;
+        }
+    }
+
+    /**
+     * Returns the (cached) matcher for the given pattern.
+     *
+     * @param pattern the field name pattern
+     * @return the matcher
+     */
+    /*package-private*/ static FieldMatcher of(final String pattern) {
+        return CACHE.getUnchecked(pattern);
+    }
+
+    /**
+     * Checks whether the pattern contains any wildcards. If not, it only
+     * matches the identical field name.
+     *
+     * @return true if the pattern contains wildcards, false otherwise
+     */
+    /*package-private*/ boolean isWildcard() {
+        return prefix != null;
+    }
+
+    /**
+     * Checks whether the given field name matches the pattern.
+     *
+     * @param field the field name
+     * @return true if the field name matches, false otherwise
+     */
+    /*package-private*/ boolean matches(final String field) {
+        return isWildcard() ? matchesWildcard(field) : pattern.equals(field);
+    }
+
+    private boolean matchesWildcard(final String field) {
+        final Boolean cached = fieldCache.getIfPresent(field);
+
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+
+        MISSES.increment();
+
+        final boolean matches;
+
+        if (field.startsWith(prefix)) {
+            // WildcardTrie keeps its traversal state in instance fields
+            synchronized (trie) {
+                matches = !trie.get(field).isEmpty();
+            }
+        }
+        else {
+            matches = false;
+        }
+
+        fieldCache.put(field, matches);
+        return matches;
+    }
+
+    /**
+     * Returns the current cache statistics.
+     *
+     * @return the statistics
+     */
+    public static Stats getStats() {
+        long fields = 0;
+
+        for (final FieldMatcher matcher : CACHE.asMap().values()) {
+            if (matcher.isWildcard()) {
+                fields += matcher.fieldCache.size();
+            }
+        }
+
+        return new Stats(HITS.sum(), MISSES.sum(), CACHE.size(), fields);
+    }
+
+    /**
+     * Discards all cached patterns and match results.
+     */
+    public static void clearCache() {
+        CACHE.invalidateAll();
+    }
+
+    /**
+     * Snapshot of the field matcher cache statistics.
+     */
+    public static final class Stats {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long patternCount;
+        private final long fieldCount;
+
+        private Stats(final long hitCount, final long missCount, final long patternCount, final long fieldCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.patternCount = patternCount;
+            this.fieldCount = fieldCount;
+        }
+
+        /**
+         * Returns the number of match results served from the cache.
+         *
+         * @return the hit count
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Returns the number of match results that had to be computed.
+         *
+         * @return the miss count
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns the number of currently cached patterns.
+         *
+         * @return the pattern count
+         */
+        public long getPatternCount() {
+            return patternCount;
+        }
+
+        /**
+         * Returns the number of currently cached match results.
+         *
+         * @return the field count
+         */
+        public long getFieldCount() {
+            return fieldCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("FieldMatcher.Stats{hits=%d, misses=%d, patterns=%d, fields=%d}",
+                    hitCount, missCount, patternCount, fieldCount);
+        }
+
+    }
+
+}
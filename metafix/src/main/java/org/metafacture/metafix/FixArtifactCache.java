@@ -0,0 +1,286 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.metafix.fix.Fix;
+import org.metafacture.metafix.fix.FixPackage;
+import org.metafacture.metafix.validation.XtextValidator;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Stores parsed and validated Fix definitions as precompiled artifacts in an
+ * on-disk cache, so that subsequent runs can load them without Xtext parsing
+ * and validation. Artifacts keep the source positions of all expressions for
+ * error messages and profiling.
+ *
+ * Artifacts are keyed by a hash of the Fix source, so a changed source is
+ * transparently recompiled. The key also covers the Metafix version and
+ * hashes of the Fix model and the generated grammar, so that artifacts aren't
+ * shared across releases (e.g. with different validation rules) or builds with
+ * a different grammar. Development builds have no version, so after changing
+ * the validation rules there, the cache directory has to be cleared. Each
+ * {@code include}d file is cached separately (keyed by its own content), since
+ * include paths are only resolved at runtime.
+ *
+ * The cache is disabled by default; it is enabled by setting the system
+ * property {@value #CACHE_DIR_PROPERTY} to the cache directory. Unreadable
+ * artifacts are ignored and rebuilt.
+ */
+public final class FixArtifactCache { // checkstyle-disable-line ClassDataAbstractionCoupling
+
+    public static final String CACHE_DIR_PROPERTY = "org.metafacture.metafix.fixCacheDir";
+
+    public static final String ARTIFACT_EXTENSION = ".fixc";
+
+    private static final Logger LOG = LoggerFactory.getLogger(FixArtifactCache.class);
+
+    // Increment whenever the artifact layout changes.
+    private static final int FORMAT_VERSION = 1;
+
+    // Registers the Fix model with EMF, which binary resources require for loading.
+    private static final EPackage FIX_PACKAGE = FixPackage.eINSTANCE;
+
+    // The binary grammar generated by Xtext, which the parser is set up from.
+    private static final String GRAMMAR_RESOURCE = "Fix.xtextbin";
+
+    private static final String FORMAT = FORMAT_VERSION + ":" + Metafix.class.getPackage().getImplementationVersion() + ":" +
+        getModelSignature(FIX_PACKAGE) + ":" + getGrammarSignature(Metafix.class.getResource(GRAMMAR_RESOURCE)) + ":";
+
+    private FixArtifactCache() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Returns the Fix definition from the given file, loaded from the cache if
+     * possible. Otherwise, it is obtained from the parser and added to the
+     * cache.
+     *
+     * @param path the Fix file path
+     * @param parser the parser to use on cache misses
+     * @return the Fix definition
+     */
+    /*package-private*/ static Fix get(final String path, final Supplier<Fix> parser) {
+        final Path cacheDir = getCacheDir();
+        byte[] content = null;
+
+        if (cacheDir != null) {
+            try {
+                content = Files.readAllBytes(Paths.get(path));
+            }
+            catch (final IOException e) {
+                // leave it to the parser to report the error
+                LOG.debug("Failed to read Fix file {}", path, e);
+            }
+        }
+
+        return content != null ? get(cacheDir, content, XtextValidator.getFileURI(path), parser) : parser.get();
+    }
+
+    /**
+     * Returns the given Fix definition, loaded from the cache if possible.
+     * Otherwise, it is obtained from the parser and added to the cache.
+     *
+     * @param fixDef the Fix definition
+     * @param uri the (virtual) URI of the Fix definition
+     * @param parser the parser to use on cache misses
+     * @return the Fix definition
+     */
+    /*package-private*/ static Fix get(final String fixDef, final URI uri, final Supplier<Fix> parser) {
+        final Path cacheDir = getCacheDir();
+        return cacheDir != null ? get(cacheDir, fixDef.getBytes(StandardCharsets.UTF_8), uri, parser) : parser.get();
+    }
+
+    private static Fix get(final Path cacheDir, final byte[] content, final URI uri, final Supplier<Fix> parser) {
+        final Path artifact = getArtifact(cacheDir, content);
+        Fix fix = Files.isRegularFile(artifact) ? read(artifact, uri) : null;
+
+        if (fix == null) {
+            fix = parser.get();
+            write(artifact, fix);
+        }
+        else {
+            LOG.debug("Loaded Fix {} from {}", uri, artifact);
+        }
+
+        return fix;
+    }
+
+    /**
+     * Returns the artifact path for the given Fix source.
+     *
+     * @param cacheDir the cache directory
+     * @param content the Fix source
+     * @return the artifact path
+     */
+    /*package-private*/ static Path getArtifact(final Path cacheDir, final byte[] content) {
+        return cacheDir.resolve(Hashing.sha256().newHasher()
+                .putString(FORMAT, StandardCharsets.UTF_8).putBytes(content).hash() + ARTIFACT_EXTENSION);
+    }
+
+    private static Path getCacheDir() {
+        final String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+        return cacheDir != null && !cacheDir.isEmpty() ? Paths.get(cacheDir) : null;
+    }
+
+    private static String getModelSignature(final EPackage ePackage) {
+        final Hasher hasher = Hashing.sha256().newHasher().putString(ePackage.getNsURI(), StandardCharsets.UTF_8);
+
+        for (final EClassifier classifier : ePackage.getEClassifiers()) {
+            hasher.putString(";" + classifier.getName(), StandardCharsets.UTF_8);
+
+            if (classifier instanceof EClass) {
+                for (final EStructuralFeature feature : ((EClass) classifier).getEAllStructuralFeatures()) {
+                    hasher.putString("," + feature.getName() + ":" + feature.getEType().getName() + ":" + feature.getUpperBound(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        return hasher.hash().toString();
+    }
+
+    // Covers syntax changes that don't affect the model (e.g. keywords); null if the grammar is unavailable.
+    private static String getGrammarSignature(final URL grammar) {
+        String signature = null;
+
+        if (grammar != null) {
+            try {
+                signature = Hashing.sha256().hashBytes(Resources.toByteArray(grammar)).toString();
+            }
+            catch (final IOException e) {
+                LOG.debug("Failed to read grammar {}", grammar, e);
+            }
+        }
+
+        return signature;
+    }
+
+    private static Fix read(final Path artifact, final URI uri) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(artifact)))) {
+            final FixLocation[] locations = new FixLocation[in.readInt()];
+
+            for (int i = 0; i < locations.length; ++i) {
+                locations[i] = new FixLocation(in.readInt(), readString(in));
+            }
+
+            final Resource resource = new BinaryResourceImpl(uri);
+            resource.load(in, null);
+
+            final Fix fix = (Fix) resource.getContents().get(0);
+            final List<EObject> objects = new ArrayList<>();
+
+            forEach(fix, objects::add);
+
+            if (objects.size() != locations.length) {
+                throw new IOException("Location count mismatch");
+            }
+
+            for (int i = 0; i < locations.length; ++i) {
+                objects.get(i).eAdapters().add(locations[i]);
+            }
+
+            return fix;
+        }
+        catch (final IOException | RuntimeException e) { // checkstyle-disable-line IllegalCatch
+            LOG.warn("Ignoring unreadable Fix artifact {}: {}", artifact, e.toString());
+            return null;
+        }
+    }
+
+    private static void write(final Path artifact, final Fix fix) {
+        final List<FixLocation> locations = new ArrayList<>();
+        forEach(fix, o -> locations.add(FixLocation.of(o)));
+
+        final Resource resource = new BinaryResourceImpl();
+        resource.getContents().add(EcoreUtil.copy(fix));
+
+        try {
+            final Path cacheDir = Files.createDirectories(artifact.getParent());
+            final Path temp = Files.createTempFile(cacheDir, artifact.getFileName().toString(), null);
+
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeInt(locations.size());
+
+                    for (final FixLocation location : locations) {
+                        out.writeInt(location.getLine());
+                        writeString(out, location.getText());
+                    }
+
+                    resource.save(out, null);
+                }
+
+                // concurrent writers produce identical artifacts, so the last one wins
+                Files.move(temp, artifact, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        catch (final IOException e) {
+            LOG.warn("Failed to write Fix artifact {}: {}", artifact, e.toString());
+        }
+    }
+
+    // Visits the objects in the same (deterministic) order for writing and reading.
+    private static void forEach(final EObject root, final Consumer<EObject> consumer) {
+        consumer.accept(root);
+        root.eAllContents().forEachRemaining(consumer);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(final DataOutputStream out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -18,11 +18,10 @@ package org.metafacture.metafix;
 
 import org.metafacture.metafix.api.FixContext;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public enum FixBind implements FixContext {
 
@@ -30,7 +29,7 @@ public enum FixBind implements FixContext {
         @Override
         public void execute(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options, final RecordTransformer recordTransformer) {
             final String scopeVariable = options.get("var");
-            Value.asList(record.get(options.get("path")), a -> {
+            Value.asList(record.getModifiable(FixPath.of(options.get("path"))), a -> {
                 for (int i = 0; i < a.size(); ++i) {
                     final Value value = a.get(i);
 
@@ -61,11 +60,11 @@ public enum FixBind implements FixContext {
     },
 
     once {
-        private final Map<Metafix, Set<String>> executed = new HashMap<>();
+        private final Map<Metafix, Set<String>> executed = new ConcurrentHashMap<>();
 
         @Override
         public void execute(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options, final RecordTransformer recordTransformer) {
-            if (executed.computeIfAbsent(metafix, k -> new HashSet<>()).add(params.isEmpty() ? null : params.get(0))) {
+            if (executed.computeIfAbsent(metafix, k -> ConcurrentHashMap.newKeySet()).add(params.isEmpty() ? "" : params.get(0))) {
                 recordTransformer.transform(record);
             }
         }
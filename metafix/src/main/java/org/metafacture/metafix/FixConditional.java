@@ -83,8 +83,8 @@ public enum FixConditional implements FixPredicate {
     in {
         @Override
         public boolean test(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            final Value value1 = record.get(params.get(0));
-            final Value value2 = record.get(params.get(1));
+            final Value value1 = record.get(FixPath.of(params, 0));
+            final Value value2 = record.get(FixPath.of(params, 1));
 
             return value1 != null && value2 != null && value1.<Boolean>extractType((m, c) -> m
                 .ifArray(a1 -> value2.matchType()
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.xtext.nodemodel.INode;
+import org.eclipse.xtext.nodemodel.util.NodeModelUtils;
+
+/**
+ * Source position of a Fix model element. Parsed elements derive it from
+ * their Xtext node; elements loaded from a {@link FixArtifactCache precompiled
+ * artifact} carry it as an adapter.
+ */
+/*package-private*/ final class FixLocation extends AdapterImpl {
+
+    private static final FixLocation UNKNOWN = new FixLocation(0, "");
+
+    private final int line;
+    private final String text;
+
+    /*package-private*/ FixLocation(final int line, final String text) {
+        this.line = line;
+        this.text = text;
+    }
+
+    /*package-private*/ static FixLocation of(final EObject object) {
+        final Adapter adapter = EcoreUtil.getExistingAdapter(object, FixLocation.class);
+        return adapter != null ? (FixLocation) adapter : fromNode(NodeModelUtils.getNode(object));
+    }
+
+    private static FixLocation fromNode(final INode node) {
+        return node != null ? new FixLocation(node.getStartLine(), NodeModelUtils.getTokenText(node)) : UNKNOWN;
+    }
+
+    /*package-private*/ int getLine() {
+        return line;
+    }
+
+    /*package-private*/ String getText() {
+        return text;
+    }
+
+    @Override
+    public boolean isAdapterForType(final Object type) {
+        return type == FixLocation.class;
+    }
+
+}
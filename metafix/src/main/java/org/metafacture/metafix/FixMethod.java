@@ -19,20 +19,31 @@ package org.metafacture.metafix;
 import org.metafacture.framework.StandardEventNames;
 import org.metafacture.io.ObjectWriter;
 import org.metafacture.metafix.api.FixFunction;
+import org.metafacture.metafix.maps.CachedMap;
+import org.metafacture.metafix.maps.CompactMap;
+import org.metafacture.metafix.maps.MapMatcher;
+import org.metafacture.metafix.maps.SharedMapRegistry;
 import org.metafacture.metamorph.api.Maps;
 import org.metafacture.metamorph.functions.ISBN;
 import org.metafacture.metamorph.functions.Timestamp;
-import org.metafacture.metamorph.maps.FileMap;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -66,16 +77,50 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
             // do nothing
         }
     },
+    put_cachedmap {
+        @Override
+        public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
+            final String mapName = params.get(0);
+
+            if (!metafix.getMapNames().contains(mapName)) {
+                throw new IllegalArgumentException("Unknown map: " + mapName);
+            }
+
+            metafix.putMap(params.size() > 1 ? params.get(1) : mapName, cachedMap(metafix.getMap(mapName), options));
+        }
+    },
+    put_compactmap {
+        @Override
+        public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
+            final String mapName = params.get(0);
+
+            if (!metafix.getMapNames().contains(mapName)) {
+                throw new IllegalArgumentException("Unknown map: " + mapName);
+            }
+
+            final CompactMap compactMap;
+
+            try {
+                compactMap = CompactMap.of(metafix.getMap(mapName));
+            }
+            catch (final UnsupportedOperationException e) {
+                throw new IllegalArgumentException("Map can't be compacted, its keys can't be listed: " + mapName, e);
+            }
+
+            metafix.putMap(params.size() > 1 ? params.get(1) : mapName, compactMap);
+        }
+    },
     put_filemap {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
             final String fileName = params.get(0);
-            final FileMap fileMap = new FileMap();
+            final SharedMapRegistry.Backend backend = getBoolean(options, FILEMAP_INDEX_OPTION) ? SharedMapRegistry.Backend.INDEX :
+                getBoolean(options, FILEMAP_COMPACT_OPTION) ? SharedMapRegistry.Backend.COMPACT : SharedMapRegistry.Backend.HASH;
 
-            fileMap.setSeparator(options.getOrDefault(FILEMAP_SEPARATOR_OPTION, FILEMAP_DEFAULT_SEPARATOR));
-            fileMap.setFile(metafix.resolvePath(fileName));
+            final Map<String, String> fileMap = SharedMapRegistry.acquire(metafix.resolvePath(fileName),
+                    options.getOrDefault(FILEMAP_SEPARATOR_OPTION, FILEMAP_DEFAULT_SEPARATOR), backend);
 
-            metafix.putMap(params.size() > 1 ? params.get(1) : fileName, fileMap);
+            metafix.putMap(params.size() > 1 ? params.get(1) : fileName, options.containsKey(CACHE_SIZE_OPTION) ? cachedMap(fileMap, options) : fileMap);
         }
     },
     put_map {
@@ -102,7 +147,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     add_field {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.addNested(params.get(0), new Value(params.get(1)));
+            record.addNested(FixPath.of(params, 0), new Value(params.get(1)));
         }
     },
     array { // array-from-hash
@@ -137,10 +182,10 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     copy_field {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            final String oldName = params.get(0);
-            final String newName = params.get(1);
+            final FixPath oldName = FixPath.of(params, 0);
+            final FixPath newName = FixPath.of(params, 1);
             Value.asList(record.get(oldName), a -> a.forEach(oldValue -> {
-                record.addNested(newName, oldValue); // we're actually aliasing
+                record.addNested(newName, oldValue.copy());
             }));
         }
     },
@@ -170,8 +215,12 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     move_field {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            FixMethod.copy_field.apply(metafix, record, params, options);
-            record.remove(params.get(0));
+            final String oldName = params.get(0);
+            final FixPath newName = FixPath.of(params, 1);
+            Value.asList(record.get(FixPath.of(params, 0)), a -> a.forEach(oldValue -> {
+                record.addNested(newName, oldValue); // no need to copy what's removed anyway
+            }));
+            record.remove(oldName);
         }
     },
     parse_text {
@@ -220,7 +269,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
                     .filter(f -> literalString(f) || record.get(f) != null)
                     .map(f -> literalString(f) ? new Value(f.substring(1)) : Value.asList(record.get(f), null).asArray().get(0))
                     .map(Value::asString).collect(Collectors.joining(joinChar != null ? joinChar : " ")));
-            record.set(params.get(0), newValue);
+            record.set(FixPath.of(params, 0), newValue);
         }
 
         private boolean literalString(final String s) {
@@ -228,7 +277,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
         }
     },
     print_record {
-        private final Map<Metafix, LongAdder> scopedCounter = new HashMap<>();
+        private final Map<Metafix, LongAdder> scopedCounter = new ConcurrentHashMap<>();
 
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
@@ -273,7 +322,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     random {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            final String field = params.get(0);
+            final FixPath field = FixPath.of(params, 0);
             final int max = getInteger(params, 1);
             record.set(field, new Value(String.valueOf(RANDOM.nextInt(max))));
         }
@@ -298,7 +347,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
 
             final UnaryOperator<String> operator = s -> s.replaceAll(search, replace);
 
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(renameArray(a, operator)))
                     .ifHash(h -> c.accept(renameHash(h, operator)))
                     .orElseThrow()
@@ -330,7 +379,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     set_array {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            final String field = params.get(0);
+            final FixPath field = FixPath.of(params, 0);
             final Value newValue = newArray(params.subList(1, params.size()).stream().map(Value::new));
             record.set(field, newValue);
         }
@@ -338,13 +387,13 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     set_field {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.set(params.get(0), new Value(params.get(1)));
+            record.set(FixPath.of(params, 0), new Value(params.get(1)));
         }
     },
     set_hash {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            final String field = params.get(0);
+            final FixPath field = FixPath.of(params, 0);
             final Value newValue = Value.newHash(h -> options.forEach((f, v) -> h.put(f, new Value(v))));
             record.set(field, newValue);
         }
@@ -352,7 +401,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     timestamp {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            final String field = params.get(0);
+            final FixPath field = FixPath.of(params, 0);
             final Timestamp timestamp = new Timestamp();
 
             withOption(options, "format", timestamp::setFormat);
@@ -377,19 +426,19 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
             final String value = params.get(1);
-            record.transform(params.get(0), s -> s + value);
+            record.transform(FixPath.of(params, 0), s -> s + value);
         }
     },
     capitalize {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), s -> s.substring(0, 1).toUpperCase() + s.substring(1));
+            record.transform(FixPath.of(params, 0), s -> s.substring(0, 1).toUpperCase() + s.substring(1));
         }
     },
     count {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(new Value(a.size())))
                     .ifHash(h -> c.accept(new Value(h.size())))
             );
@@ -398,7 +447,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     downcase {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), s -> s.toLowerCase());
+            record.transform(FixPath.of(params, 0), s -> s.toLowerCase());
         }
     },
     filter {
@@ -409,7 +458,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
 
             final Predicate<Value> predicate = s -> search.matcher(s.asString()).find();
 
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(newArray(a.stream().filter(invert ? predicate.negate() : predicate))))
             );
         }
@@ -417,7 +466,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     flatten {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(newArray(flatten(a.stream()))))
             );
         }
@@ -426,9 +475,9 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
             final String errorString = options.get(ERROR_STRING_OPTION);
-            final JsonValue.Parser parser = new JsonValue.Parser();
+            final JsonValue.Parser parser = new JsonValue.Parser(metafix::internName, metafix::internValue);
 
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifString(s -> {
                         try {
                             c.accept(parser.parse(s));
@@ -444,7 +493,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
             final String search = params.get(1);
-            record.transform(params.get(0), s -> String.valueOf(s.indexOf(search))); // TODO: multiple
+            record.transform(FixPath.of(params, 0), s -> String.valueOf(s.indexOf(search))); // TODO: multiple
         }
     },
     isbn {
@@ -456,14 +505,14 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
             withOption(options, "to", isbn::setTo);
             withOption(options, "verify_check_digit", isbn::setVerifyCheckDigit);
 
-            record.transform(params.get(0), isbn::process);
+            record.transform(FixPath.of(params, 0), isbn::process);
         }
     },
     join_field {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
             final String joinChar = params.size() > 1 ? params.get(1) : "";
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(new Value(a.stream().map(Value::asString).collect(Collectors.joining(joinChar)))))
             );
         }
@@ -471,10 +520,11 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     lookup {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
+            final MapMatcher.Mode mode = MapMatcher.Mode.of(options.get(LOOKUP_MATCH_OPTION));
             final Map<String, String> map;
 
             if (params.size() <= 1) {
-                map = options;
+                map = INLINE_MAPS.getUnchecked(options);
             }
             else {
                 final String mapName = params.get(1);
@@ -488,13 +538,17 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
                     }
                 }
 
-                map = metafix.getMap(mapName);
+                // prefetched values only serve exact keys
+                map = mode == MapMatcher.Mode.EXACT ? metafix.getLookupMap(mapName) : metafix.getMap(mapName);
             }
 
+            final MapMatcher matcher = MapMatcher.of(map, mode);
+
             final String defaultValue = map.get(Maps.DEFAULT_MAP_KEY); // TODO: Catmandu uses 'default'
-            record.transform(params.get(0), oldValue -> {
-                final String newValue = map.getOrDefault(oldValue, defaultValue);
-                return newValue != null ? newValue : getBoolean(options, "delete") ? null : oldValue;
+            record.transform(FixPath.of(params, 0), oldValue -> {
+                final String matchedValue = matcher.get(oldValue);
+                final String newValue = matchedValue != null ? matchedValue : defaultValue;
+                return newValue != null ? newValue : getBoolean(options, LOOKUP_DELETE_OPTION) ? null : oldValue;
             });
         }
     },
@@ -502,7 +556,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
             final String value = params.get(1);
-            record.transform(params.get(0), s -> value + s);
+            record.transform(FixPath.of(params, 0), s -> value + s);
         }
     },
     replace_all {
@@ -511,13 +565,13 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
             final String search = params.get(1);
             final String replace = params.get(2);
 
-            record.transform(params.get(0), s -> s.replaceAll(search, replace));
+            record.transform(FixPath.of(params, 0), s -> s.replaceAll(search, replace));
         }
     },
     reverse {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> {
                         final List<Value> list = a.stream().collect(Collectors.toList());
                         Collections.reverse(list);
@@ -538,7 +592,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
             final Comparator<Value> comparator = numeric ?
                 Comparator.comparing(function.andThen(Integer::parseInt)) : Comparator.comparing(function);
 
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(new Value((uniq ? unique(a.stream()) : a.stream())
                                 .sorted(reverse ? comparator.reversed() : comparator).collect(Collectors.toList()))))
             );
@@ -553,7 +607,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
             final Function<String, Value> splitFunction = s ->
                 newArray(Arrays.stream(splitPattern.split(s)).map(Value::new));
 
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(newArray(a.stream().map(Value::asString).map(splitFunction))))
                     .ifHash(h -> c.accept(Value.newHash(n -> h.forEach((f, w) -> n.put(f, splitFunction.apply(w.asString()))))))
                     .ifString(s -> c.accept(splitFunction.apply(s)))
@@ -567,7 +621,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
             final Integer end = params.size() > 2 ? offset + getInteger(params, 2) : null;
             // TODO: final String replacement = params.size() > 3 ? params.get(3) : null;
 
-            record.transform(params.get(0), s -> {
+            record.transform(FixPath.of(params, 0), s -> {
                 final int length = s.length();
                 return offset > length ? s : end == null || end > length ? s.substring(offset) : s.substring(offset, end);
             });
@@ -576,7 +630,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     sum {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(new Value(a.stream().map(Value::asString).mapToInt(Integer::parseInt).sum())))
             );
         }
@@ -587,7 +641,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
             final String errorString = options.get(ERROR_STRING_OPTION);
             final boolean pretty = getBoolean(options, "pretty");
 
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .orElse(v -> {
                         try {
                             c.accept(new Value(v.toJson(pretty)));
@@ -602,13 +656,13 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     trim {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), String::trim);
+            record.transform(FixPath.of(params, 0), String::trim);
         }
     },
     uniq {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), (m, c) -> m
+            record.transform(FixPath.of(params, 0), (m, c) -> m
                     .ifArray(a -> c.accept(newArray(unique(a.stream()))))
             );
         }
@@ -616,7 +670,7 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
     upcase {
         @Override
         public void apply(final Metafix metafix, final Record record, final List<String> params, final Map<String, String> options) {
-            record.transform(params.get(0), s -> s.toUpperCase());
+            record.transform(FixPath.of(params, 0), s -> s.toUpperCase());
         }
     };
 
@@ -624,9 +678,57 @@ public enum FixMethod implements FixFunction { // checkstyle-disable-line ClassD
 
     private static final String FILEMAP_SEPARATOR_OPTION = "sep_char";
     private static final String FILEMAP_DEFAULT_SEPARATOR = ",";
+    private static final String FILEMAP_INDEX_OPTION = "index";
+    private static final String FILEMAP_COMPACT_OPTION = "compact";
+
+    private static final String LOOKUP_DELETE_OPTION = "delete";
+    private static final String LOOKUP_MATCH_OPTION = "match";
+
+    private static final String CACHE_SIZE_OPTION = "cache_size";
+    private static final String CACHE_POLICY_OPTION = "cache_policy";
+    private static final String CACHE_MISSES_OPTION = "cache_misses";
 
     private static final String ERROR_STRING_OPTION = "error_string";
 
     private static final Random RANDOM = new Random();
 
+    private static final int INLINE_MAPS_SIZE = 1000;
+
+    // Inline lookup maps are canonicalized by content (their options may be resolved
+    // anew for each record), so that matchers are only built once per distinct map.
+    private static final LoadingCache<Map<String, String>, Map<String, String>> INLINE_MAPS = CacheBuilder.newBuilder()
+        .maximumSize(INLINE_MAPS_SIZE)
+        .build(CacheLoader.from(FixMethod::inlineMap));
+
+    // Script-level methods that neither read nor modify the record, and whose
+    // effect isn't expected to be reset per record (unlike put_var/put_vars).
+    private static final Set<FixMethod> INITIALIZERS = EnumSet.of(put_cachedmap, put_compactmap, put_filemap, put_map);
+
+    /**
+     * Checks whether this method only needs to be executed once per script
+     * (when it occurs at the top level of the main Fix with static
+     * parameters), since its effect does not depend on the record.
+     *
+     * @return true if this method initializes script-level state, false otherwise
+     */
+    /*package-private*/ boolean isInitializer() {
+        return INITIALIZERS.contains(this);
+    }
+
+    private static Map<String, String> inlineMap(final Map<String, String> options) {
+        final Map<String, String> map = new LinkedHashMap<>(options);
+
+        map.remove(LOOKUP_DELETE_OPTION);
+        map.remove(LOOKUP_MATCH_OPTION);
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static Map<String, String> cachedMap(final Map<String, String> map, final Map<String, String> options) {
+        return new CachedMap(map,
+                CachedMap.Policy.valueOf(options.getOrDefault(CACHE_POLICY_OPTION, CachedMap.Policy.LRU.name()).toUpperCase(Locale.ROOT)),
+                Integer.parseInt(options.getOrDefault(CACHE_SIZE_OPTION, String.valueOf(CachedMap.DEFAULT_SIZE))),
+                Boolean.parseBoolean(options.getOrDefault(CACHE_MISSES_OPTION, "true")));
+    }
+
 }
@@ -19,29 +19,126 @@ package org.metafacture.metafix;
 import org.metafacture.metafix.Value.Array;
 import org.metafacture.metafix.Value.Hash;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.UnaryOperator;
 
 /**
  * Our goal here is something like https://metacpan.org/pod/Catmandu::Path::simple
  *
  * With all get/set/update/create/delete logic collected here.
  *
+ * Paths are parsed once into immutable {@link Segment segments}; all
+ * operations walk the segments by index and don't allocate intermediate paths.
+ * Parsed paths are shared via {@link #of(String)}.
+ *
  * @author Fabian Steeg (fsteeg)
  *
  */
-/*package-private*/ class FixPath {
+/*package-private*/ final class FixPath {
+
+    public static final String CACHE_SIZE_PROPERTY = "org.metafacture.metafix.pathCacheSize";
+
+    public static final int DEFAULT_CACHE_SIZE = 10000;
 
     private static final String ASTERISK = "*";
-    private String[] path;
+
+    private static final int CACHE_SIZE = Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+
+    // Least recently used paths are evicted once full, so that dynamic paths
+    // (e.g. with resolved variables) don't crowd out the frequently used ones.
+    private static final Cache<String, FixPath> CACHE = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .build();
+
+    private final Segment[] segments;
+    private final String path;
+    private final boolean hasWildcard;
+    private final int asteriskCount;
 
     /*package-private*/ FixPath(final String path) {
-        this(Value.split(path));
+        this(path, UnaryOperator.identity());
     }
 
-    private FixPath(final String[] path) {
+    private FixPath(final String path, final UnaryOperator<String> interner) {
+        this(compile(Value.split(path), interner), path);
+    }
+
+    private FixPath(final Segment[] segments, final String path) {
+        this.segments = segments;
         this.path = path;
+
+        boolean wildcard = false;
+        int asterisks = 0;
+
+        for (final Segment segment : segments) {
+            if (segment.kind == Kind.ASTERISK) {
+                ++asterisks;
+            }
+
+            wildcard |= segment.kind == Kind.ASTERISK || segment.kind == Kind.WILDCARD;
+        }
+
+        hasWildcard = wildcard;
+        asteriskCount = asterisks;
+    }
+
+    /**
+     * Returns the parsed path for the given field path. Parsed paths are
+     * cached; beyond {@value #CACHE_SIZE_PROPERTY} entries, the least recently
+     * used ones are evicted.
+     *
+     * @param path the field path
+     * @return the parsed path
+     */
+    /*package-private*/ static FixPath of(final String path) {
+        FixPath fixPath = CACHE.getIfPresent(path);
+
+        if (fixPath == null) {
+            fixPath = new FixPath(path);
+            CACHE.put(path, fixPath);
+        }
+
+        return fixPath;
+    }
+
+    /**
+     * Returns the parsed path for the given expression param. Static params
+     * are {@link BoundParams bound} to their expression and parsed only once;
+     * dynamic (resolved) params go through the {@link #of(String) cache}.
+     *
+     * @param params the expression's params
+     * @param index the index of the field path param
+     * @return the parsed path
+     */
+    /*package-private*/ static FixPath of(final List<String> params, final int index) {
+        return params instanceof BoundParams ? ((BoundParams) params).getPath(index) : of(params.get(index));
+    }
+
+    private static Segment[] compile(final String[] path, final UnaryOperator<String> interner) {
+        final Segment[] segments = new Segment[path.length];
+
+        for (int i = 0; i < path.length; ++i) {
+            segments[i] = new Segment(path[i], interner);
+        }
+
+        return segments;
+    }
+
+    /**
+     * Finds the value at this path like {@link #findIn(Hash)}, but copies
+     * shared contents along the way, so that the value found is the one held
+     * by the hash and can be modified in place.
+     *
+     * @param hash the hash
+     * @return the value found
+     */
+    /*package-private*/ Value findModifiableIn(final Hash hash) {
+        return findIn(hash, 0, false, true);
     }
 
     /*package-private*/ Value findIn(final Hash hash) {
@@ -49,31 +146,47 @@ import java.util.Map;
     }
 
     /*package-private*/ Value findIn(final Hash hash, final boolean enforceStringValue) {
-        final String currentSegment = path[0];
-        final FixPath remainingPath = new FixPath(tail(path));
-        if (currentSegment.equals(ASTERISK) && remainingPath.size() > 0) {
+        return findIn(hash, 0, enforceStringValue, false);
+    }
+
+    private Value findIn(final Hash hash, final int i, final boolean enforceStringValue, final boolean modifiable) {
+        if (modifiable) {
+            hash.unshare();
+        }
+
+        final Segment currentSegment = segments[i];
+        final boolean isLast = isLast(i);
+        if (currentSegment.kind == Kind.ASTERISK && !isLast) {
             // TODO: search in all elements of hash?
-            return remainingPath.findIn(hash, enforceStringValue);
+            return findIn(hash, i + 1, enforceStringValue, modifiable);
         }
-        final Value value = hash.get(currentSegment, enforceStringValue && path.length == 1);
-        return value == null || path.length == 1 ? value : value.extractType((m, c) -> m
-                .ifArray(a -> c.accept(remainingPath.findIn(a)))
-                .ifHash(h -> c.accept(remainingPath.findIn(h, enforceStringValue)))
+        final Value value = hash.get(currentSegment.name, enforceStringValue && isLast);
+        return value == null || isLast ? value : value.extractType((m, c) -> m
+                .ifArray(a -> c.accept(findIn(a, i + 1, modifiable)))
+                .ifHash(h -> c.accept(findIn(h, i + 1, enforceStringValue, modifiable)))
                 .orElseThrow()
         );
     }
 
     /*package-private*/ Value findIn(final Array array) {
+        return findIn(array, 0, false);
+    }
+
+    private Value findIn(final Array array, final int i, final boolean modifiable) {
+        if (modifiable) {
+            array.unshare();
+        }
+
         final Value result;
 
-        if (path.length == 0) {
+        if (i == segments.length) {
             result = new Value(array);
         }
         else {
-            final String currentSegment = path[0];
-            if (currentSegment.equals(ASTERISK)) {
+            final Segment currentSegment = segments[i];
+            if (currentSegment.kind == Kind.ASTERISK) {
                 result = Value.newArray(resultArray -> array.forEach(v -> {
-                    final Value findInValue = findInValue(v, tail(path));
+                    final Value findInValue = findInValue(v, i + 1, modifiable);
                     if (findInValue != null) {
                         findInValue.matchType()
                             // flatten result arrays (use Value#path for structure)
@@ -82,10 +195,10 @@ import java.util.Map;
                     }
                 }));
             }
-            else if (isReference(currentSegment)) {
+            else if (currentSegment.isReference()) {
                 final Value referencedValue = getReferencedValue(array, currentSegment, null);
                 if (referencedValue != null) {
-                    result = findInValue(referencedValue, tail(path));
+                    result = findInValue(referencedValue, i + 1, modifiable);
                 }
                 else {
                     result = null;
@@ -93,29 +206,33 @@ import java.util.Map;
             }
             // TODO: WDCD? copy_field('your.name','author[].name'), where name is an array
             else {
-                result = Value.newArray(a -> array.forEach(v -> a.add(findInValue(v, path))));
+                result = Value.newArray(a -> array.forEach(v -> a.add(findInValue(v, i, modifiable))));
             }
         }
 
         return result;
     }
 
-    private Value findInValue(final Value value, final String[] p) {
+    private Value findInValue(final Value value, final int i, final boolean modifiable) {
         // TODO: move impl into enum elements, here call only value.find
-        return p.length == 0 ? value : value == null ? null : value.extractType((m, c) -> m
-                .ifArray(a -> c.accept(new FixPath(p).findIn(a)))
-                .ifHash(h -> c.accept(new FixPath(p).findIn(h)))
+        return i == segments.length ? value : value == null ? null : value.extractType((m, c) -> m
+                .ifArray(a -> c.accept(findIn(a, i, modifiable)))
+                .ifHash(h -> c.accept(findIn(h, i, false, modifiable)))
                 .orElse(c)
         );
     }
 
     @Override
     public String toString() {
-        return String.join(".", path);
+        return path;
     }
 
     /*package-private*/ int size() {
-        return path.length;
+        return segments.length;
+    }
+
+    private boolean isLast(final int i) {
+        return i == segments.length - 1;
     }
 
     // TODO: this is still very much work in progress, I think we should
@@ -126,12 +243,12 @@ import java.util.Map;
         final FixPath result;
 
         // One *, no matching path: replace with index of current result
-        if (countAsterisks() == 1 && !matches(value.getPath())) {
-            result = new FixPath(replaceInPath(ASTERISK, i));
+        if (asteriskCount == 1 && !matches(value.getPath())) {
+            result = replaceAsterisk(i);
         }
         // Multiple * or wildcards, value has a path: use the value's path
-        else if (value.getPath() != null && hasWildcard()) {
-            result = new FixPath(value.getPath());
+        else if (value.getPath() != null && hasWildcard) {
+            result = of(value.getPath());
         }
         else {
             result = this;
@@ -140,20 +257,44 @@ import java.util.Map;
         return result;
     }
 
+    // Equivalent to `thatPath.replaceAll("\\.\\d+\\.", ".*.").equals(toString())`
     private boolean matches(final String thatPath) {
-        return thatPath != null && thatPath.replaceAll("\\.\\d+\\.", ".*.").equals(String.join(".", this.path));
-    }
+        boolean matches = thatPath != null;
+        boolean replaced = false;
+        boolean isLast = false;
+        int start = 0;
+        int i = 0;
 
-    private String[] replaceInPath(final String find, final int i) {
-        return Arrays.asList(path).stream().map(s -> s.equals(find) ? String.valueOf(i + 1) : s).toArray(String[]::new);
-    }
+        while (matches && !isLast) {
+            final int dot = thatPath.indexOf('.', start);
+            isLast = dot < 0;
 
-    private boolean hasWildcard() {
-        return Arrays.asList(path).stream().filter(s -> s.contains("*") || s.contains("?") || s.contains("|") || s.matches(".*?\\[.+?\\].*?")).findAny().isPresent();
+            final int end = isLast ? thatPath.length() : dot;
+
+            // consecutive indexes are not replaced since the regex consumes the separator
+            final boolean replace = i > 0 && !isLast && !replaced && Value.isNumber(thatPath, start, end);
+
+            matches = i < segments.length && segments[i].matches(thatPath, start, end, replace);
+
+            replaced = replace;
+            start = end + 1;
+            ++i;
+        }
+
+        return matches && i == segments.length;
     }
 
-    private long countAsterisks() {
-        return Arrays.asList(path).stream().filter(s -> s.equals(ASTERISK)).count();
+    private FixPath replaceAsterisk(final int i) {
+        final Segment[] replaced = new Segment[segments.length];
+        final String[] names = new String[segments.length];
+        final String index = String.valueOf(i + 1);
+
+        for (int j = 0; j < segments.length; ++j) {
+            replaced[j] = segments[j].kind == Kind.ASTERISK ? new Segment(index) : segments[j];
+            names[j] = replaced[j].name;
+        }
+
+        return new FixPath(replaced, String.join(".", names));
     }
 
     /*package-private*/ enum InsertMode {
@@ -165,30 +306,22 @@ import java.util.Map;
             }
 
             @Override
-            void apply(final Array array, final String field, final Value value) {
-                try {
-                    final ReservedField reservedField = ReservedField.fromString(field);
-                    if (reservedField != null) {
-                        switch (reservedField) {
-                            case $append:
-                                array.add(value);
-                                break;
-                            case $first:
-                                array.set(0, value);
-                                break;
-                            case $last:
-                                array.set(array.size() - 1, value);
-                                break;
-                            default:
-                                break;
-                        }
-                    }
-                    else {
-                        array.set(Integer.valueOf(field) - 1, value);
-                    }
-                }
-                catch (final NumberFormatException e) {
-                    throw new IllegalStateException("Expected Hash, got Array", e);
+            void apply(final Array array, final Segment segment, final Value value) {
+                switch (segment.kind) {
+                    case APPEND:
+                        array.add(value);
+                        break;
+                    case FIRST:
+                        array.set(0, value);
+                        break;
+                    case LAST:
+                        array.set(array.size() - 1, value);
+                        break;
+                    case INDEX:
+                        array.set(segment.index, value);
+                        break;
+                    default:
+                        throw new IllegalStateException("Expected Hash, got Array");
                 }
             }
         },
@@ -199,156 +332,272 @@ import java.util.Map;
             }
 
             @Override
-            void apply(final Array array, final String field, final Value value) {
+            void apply(final Array array, final Segment segment, final Value value) {
                 array.add(value);
             }
         };
 
         abstract void apply(Hash hash, String field, Value value);
 
-        abstract void apply(Array array, String field, Value newValue);
+        abstract void apply(Array array, Segment segment, Value newValue);
 
     }
 
     /*package-private*/ void removeNestedFrom(final Array array) {
-        if (path.length >= 1 && path[0].equals(ASTERISK)) {
+        removeNestedFrom(array, 0);
+    }
+
+    private void removeNestedFrom(final Array array, final int i) {
+        if (i < segments.length && segments[i].kind == Kind.ASTERISK) {
             array.removeAll();
         }
-        else if (path.length >= 1 && Value.isNumber(path[0])) {
-            final int index = Integer.parseInt(path[0]) - 1; // TODO: 0-based Catmandu vs. 1-based Metafacture
+        else if (i < segments.length && segments[i].kind == Kind.INDEX) {
+            final int index = segments[i].index; // TODO: 0-based Catmandu vs. 1-based Metafacture
             if (index >= 0 && index < array.size()) {
-                if (path.length == 1) {
+                if (isLast(i)) {
                     array.remove(index);
                 }
                 else {
-                    removeNestedFrom(array.get(index));
+                    array.unshare();
+                    removeNestedFrom(array.get(index), i + 1);
                 }
             }
         }
     }
 
     /*package-private*/ void removeNestedFrom(final Hash hash) {
-        final String field = path[0];
+        removeNestedFrom(hash, 0);
+    }
+
+    private void removeNestedFrom(final Hash hash, final int i) {
+        final String field = segments[i].name;
 
-        if (path.length == 1) {
+        if (isLast(i)) {
             hash.remove(field);
         }
         else if (hash.containsField(field)) {
-            removeNestedFrom(hash.get(field));
+            hash.unshare();
+            removeNestedFrom(hash.get(field), i + 1);
         }
     }
 
-    private void removeNestedFrom(final Value value) {
+    private void removeNestedFrom(final Value value, final int i) {
         // TODO: impl and call just value.remove
         if (value != null) {
             value.matchType()
-                .ifArray(a -> new FixPath(tail(path)).removeNestedFrom(a))
-                .ifHash(h -> new FixPath(tail(path)).removeNestedFrom(h))
+                .ifArray(a -> removeNestedFrom(a, i))
+                .ifHash(h -> removeNestedFrom(h, i))
                 .orElseThrow();
         }
     }
 
-    private Value insertInto(final Array array, final InsertMode mode, final Value newValue) {
+    private void insertInto(final Array array, final int i, final InsertMode mode, final Value newValue) {
         // basic idea: reuse findIn logic here? setIn(findIn(array), newValue)
-        final String field = path[0];
+        final Segment segment = segments[i];
 
-        if (path.length == 1) {
-            mode.apply(array, field, newValue);
+        if (isLast(i)) {
+            mode.apply(array, segment, newValue);
         }
         else {
-            if (ASTERISK.equals(field)) {
-                array.forEach(value -> insertInto(value, mode, newValue.copy(), field, tail(path)));
+            array.unshare();
+
+            if (segment.kind == Kind.ASTERISK) {
+                array.forEach(value -> insertInto(value, i + 1, mode, newValue.copy(), segment));
             }
-            else if (isReference(field)) {
-                insertInto(getReferencedValue(array, field, newValue.getPath()), mode, newValue, field, tail(path));
+            else if (segment.isReference()) {
+                insertInto(getReferencedValue(array, segment, newValue), i + 1, mode, newValue, segment);
             }
         }
+    }
 
-        return new Value(array);
+    /*package-private*/ void insertInto(final Hash hash, final InsertMode mode, final Value newValue) {
+        insertInto(hash, 0, mode, newValue);
     }
 
-    /*package-private*/ Value insertInto(final Hash hash, final InsertMode mode, final Value newValue) {
+    private void insertInto(final Hash hash, final int i, final InsertMode mode, final Value newValue) {
         // basic idea: reuse findIn logic here? setIn(findIn(hash), newValue)
-        final String field = path[0];
+        final String field = segments[i].name;
 
-        if (path.length == 1) {
+        if (isLast(i)) {
             mode.apply(hash, field, newValue);
         }
         else {
             if (!hash.containsField(field)) {
                 hash.put(field, Value.newHash());
             }
-            insertInto(hash.get(field), mode, newValue, field, tail(path));
+            else {
+                hash.unshare();
+            }
+            insertInto(hash.get(field), i + 1, mode, newValue, segments[i]);
         }
-
-        return new Value(hash);
     }
 
-    private Value insertInto(final Value value, final InsertMode mode, final Value newValue, final String field, final String[] tail) {
+    private void insertInto(final Value value, final int i, final InsertMode mode, final Value newValue, final Segment segment) {
         if (value != null) {
-            final FixPath fixPath = new FixPath(tail);
-            newValue.withPathSet(value.getPath());
-            return value.extractType((m, c) -> m
-                    .ifArray(a -> c.accept(fixPath.insertInto(a, mode, newValue)))
-                    .ifHash(h -> c.accept(fixPath.insertInto(h, mode, newValue)))
-                    .orElseThrow());
+            newValue.withPathOf(value);
+            value.matchType()
+                .ifArray(a -> insertInto(a, i, mode, newValue))
+                .ifHash(h -> insertInto(h, i, mode, newValue))
+                .orElseThrow();
         }
         else {
-            throw new IllegalArgumentException("Can't find: " + field + " in: " + value);
+            throw new IllegalArgumentException("Can't find: " + segment.name + " in: " + value);
+        }
+    }
+
+    // TODO replace switch, extract to method on array?
+    private Value getReferencedValue(final Array array, final Segment segment, final Value newValue) {
+        Value referencedValue = null;
+
+        switch (segment.kind) {
+            case INDEX:
+                referencedValue = getReferencedValue(array, segment.index);
+                break;
+            case FIRST:
+                referencedValue = getReferencedValue(array, 0);
+                break;
+            case LAST:
+                referencedValue = getReferencedValue(array, array.size() - 1);
+                break;
+            case APPEND:
+                referencedValue = Value.newHash(); // TODO: append non-hash?
+                if (newValue != null) {
+                    referencedValue.withPathOf(newValue);
+                }
+                array.add(referencedValue);
+                break;
+            default:
+                break;
         }
+
+        return referencedValue;
     }
 
-    private String[] tail(final String[] fields) {
-        return Arrays.copyOfRange(fields, 1, fields.length);
+    private Value getReferencedValue(final Array array, final int index) {
+        return 0 <= index && index < array.size() ? array.get(index) : null;
     }
 
-    private enum ReservedField {
-        $append, $first, $last;
+    /**
+     * The static params of a single expression, which keep the field paths
+     * parsed from them. A param is only parsed when it's first used as a path;
+     * its literal field names are interned with the given function, so that
+     * they're the same instances as the names of the records' fields.
+     */
+    /*package-private*/ static final class BoundParams extends AbstractList<String> implements RandomAccess {
+
+        private final List<String> params;
+        private final UnaryOperator<String> interner;
+        private final FixPath[] paths;
+
+        /*package-private*/ BoundParams(final List<String> params, final UnaryOperator<String> interner) {
+            this.params = params;
+            this.interner = interner;
+            paths = new FixPath[params.size()];
+        }
 
-        private static final Map<String, ReservedField> STRING_TO_ENUM = new HashMap<>();
-        static {
-            for (final ReservedField f : values()) {
-                STRING_TO_ENUM.put(f.toString(), f);
-            }
+        @Override
+        public String get(final int index) {
+            return params.get(index);
         }
 
-        static ReservedField fromString(final String string) {
-            return STRING_TO_ENUM.get(string);
+        @Override
+        public int size() {
+            return params.size();
         }
+
+        // bound params belong to a single Metafix instance, so they're not accessed concurrently
+        private FixPath getPath(final int index) {
+            FixPath path = paths[index];
+
+            if (path == null) {
+                path = new FixPath(params.get(index), interner);
+                paths[index] = path;
+            }
+
+            return path;
+        }
+
     }
 
-    private boolean isReference(final String field) {
-        return ReservedField.fromString(field) != null || Value.isNumber(field);
+    private enum Kind {
+        LITERAL, WILDCARD, ASTERISK, INDEX, FIRST, LAST, APPEND
     }
 
-    // TODO replace switch, extract to method on array?
-    private Value getReferencedValue(final Array array, final String field, final String p) {
-        Value referencedValue = null;
+    private static final class Segment {
 
-        if (Value.isNumber(field)) {
-            final int index = Integer.valueOf(field) - 1;
-            return 0 <= index && index < array.size() ? array.get(index) : null;
+        private final Kind kind;
+        private final String name;
+        private final int index;
+
+        private Segment(final String name) {
+            this(name, UnaryOperator.identity());
         }
 
-        final ReservedField reservedField = ReservedField.fromString(field);
-        if (reservedField != null) {
-            switch (reservedField) {
-                case $first:
-                    referencedValue = getReferencedValue(array, "1", p);
+        private Segment(final String name, final UnaryOperator<String> interner) {
+            if (Value.isNumber(name)) {
+                kind = Kind.INDEX;
+                index = parseIndex(name);
+            }
+            else {
+                kind = kindOf(name);
+                index = -1;
+            }
+
+            this.name = kind == Kind.LITERAL ? interner.apply(name) : name;
+        }
+
+        private static Kind kindOf(final String name) {
+            final Kind kind;
+
+            switch (name) {
+                case ASTERISK:
+                    kind = Kind.ASTERISK;
                     break;
-                case $last:
-                    referencedValue = getReferencedValue(array, String.valueOf(array.size()), p);
+                case "$first":
+                    kind = Kind.FIRST;
                     break;
-                case $append:
-                    referencedValue = Value.newHash().withPathSet(p); // TODO: append non-hash?
-                    array.add(referencedValue);
+                case "$last":
+                    kind = Kind.LAST;
+                    break;
+                case "$append":
+                    kind = Kind.APPEND;
                     break;
                 default:
+                    kind = isWildcard(name) ? Kind.WILDCARD : Kind.LITERAL;
                     break;
             }
+
+            return kind;
+        }
+
+        private static boolean isWildcard(final String name) {
+            final int open = name.indexOf('[');
+            final boolean characterClass = open >= 0 && name.indexOf(']', open + 2) >= 0;
+
+            return characterClass || name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('|') >= 0;
+        }
+
+        private static int parseIndex(final String name) {
+            int index;
+
+            try {
+                index = Integer.parseInt(name) - 1; // TODO: 0-based Catmandu vs. 1-based Metafacture
+            }
+            catch (final NumberFormatException e) {
+                index = Integer.MAX_VALUE;
+            }
+
+            return index;
+        }
+
+        private boolean matches(final String path, final int start, final int end, final boolean asterisk) {
+            return asterisk ? kind == Kind.ASTERISK : name.length() == end - start && path.startsWith(name, start);
+        }
+
+        private boolean isReference() {
+            return kind == Kind.INDEX || kind == Kind.FIRST || kind == Kind.LAST || kind == Kind.APPEND;
         }
 
-        return referencedValue;
     }
 
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Collects execution statistics for each Fix expression: number of
+ * invocations, total and maximum wall time, and allocated bytes (where
+ * supported by the JVM). Expressions are identified by their source file
+ * and line.
+ *
+ * Times and allocations of block expressions ({@code if}, {@code do}, etc.)
+ * include those of their nested expressions.
+ *
+ * Profiling is disabled by default; a disabled profiler only costs a flag
+ * check per expression.
+ */
+public class FixProfiler {
+
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean &&
+        ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+
+    /**
+     * Creates an instance of {@link FixProfiler}.
+     */
+    public FixProfiler() {
+    }
+
+    /**
+     * Flags whether expressions should be profiled.
+     *
+     * @param enabled true if expressions should be profiled, false otherwise
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Checks whether expressions are profiled.
+     *
+     * @return true if expressions are profiled, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*package-private*/ Entry getEntry(final String file, final int line, final String expression) {
+        return entries.computeIfAbsent(file + ":" + line + ":" + expression, k -> new Entry(file, line, expression));
+    }
+
+    /*package-private*/ <T> void profile(final Entry entry, final Consumer<T> consumer, final T argument) {
+        final long startBytes = allocatedBytes();
+        final long startTime = System.nanoTime();
+
+        try {
+            consumer.accept(argument);
+        }
+        finally {
+            entry.add(System.nanoTime() - startTime, allocatedBytes() - startBytes);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATION_SUPPORTED ? Math.max(0L, ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN)
+                .getThreadAllocatedBytes(Thread.currentThread().getId())) : 0L;
+    }
+
+    /**
+     * Adds the statistics collected by the given profiler to those of this
+     * profiler, e.g. to combine the profiles of several instances running the
+     * same Fix.
+     *
+     * @param profiler the profiler to add
+     */
+    /*package-private*/ void merge(final FixProfiler profiler) {
+        profiler.entries.values().forEach(e -> getEntry(e.file, e.line, e.expression).merge(e));
+    }
+
+    /**
+     * Returns the current statistics of all invoked expressions, ordered by
+     * descending total time.
+     *
+     * @return the profiler entries
+     */
+    public List<Entry> getEntries() {
+        final List<Entry> result = new ArrayList<>();
+
+        entries.values().forEach(e -> {
+            if (e.getCount() > 0) {
+                result.add(e);
+            }
+        });
+
+        result.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+        return result;
+    }
+
+    /**
+     * Discards all collected statistics.
+     */
+    public void reset() {
+        entries.values().forEach(Entry::reset);
+    }
+
+    /**
+     * Renders the current statistics in the given format.
+     *
+     * @param format the report format
+     * @return the report
+     */
+    public String getReport(final Format format) {
+        return format == Format.JSON ? toJson() : toTable();
+    }
+
+    private String toTable() {
+        final StringBuilder builder = new StringBuilder();
+        final String pattern = "%12s %14s %12s %12s %16s  %s%n";
+
+        builder.append(String.format(pattern, "count", "total (us)", "mean (us)", "max (us)", "allocated (B)", "location: expression"));
+
+        for (final Entry entry : getEntries()) {
+            builder.append(String.format(pattern, entry.getCount(), entry.getTotalNanos() / NANOS_PER_MICRO,
+                        entry.getTotalNanos() / entry.getCount() / NANOS_PER_MICRO, entry.getMaxNanos() / NANOS_PER_MICRO,
+                        entry.getAllocatedBytes(), entry));
+        }
+
+        return builder.toString();
+    }
+
+    private String toJson() {
+        final StringWriter writer = new StringWriter();
+
+        try (JsonGenerator jsonGenerator = new JsonFactory().createGenerator(writer)) {
+            jsonGenerator.useDefaultPrettyPrinter();
+            jsonGenerator.writeStartArray();
+
+            for (final Entry entry : getEntries()) {
+                jsonGenerator.writeStartObject();
+                jsonGenerator.writeStringField("file", entry.getFile());
+                jsonGenerator.writeNumberField("line", entry.getLine());
+                jsonGenerator.writeStringField("expression", entry.getExpression());
+                jsonGenerator.writeNumberField("count", entry.getCount());
+                jsonGenerator.writeNumberField("totalNanos", entry.getTotalNanos());
+                jsonGenerator.writeNumberField("maxNanos", entry.getMaxNanos());
+                jsonGenerator.writeNumberField("allocatedBytes", entry.getAllocatedBytes());
+                jsonGenerator.writeEndObject();
+            }
+
+            jsonGenerator.writeEndArray();
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return writer.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toTable();
+    }
+
+    /**
+     * Profiler report formats.
+     */
+    public enum Format {
+
+        /**
+         * Plain text table, one expression per line.
+         */
+        TABLE,
+
+        /**
+         * JSON array, one object per expression.
+         */
+        JSON
+
+    }
+
+    /**
+     * Execution statistics of a single Fix expression.
+     */
+    public static final class Entry {
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final String expression;
+        private final String file;
+        private final int line;
+
+        private Entry(final String file, final int line, final String expression) {
+            this.file = file;
+            this.line = line;
+            this.expression = expression;
+        }
+
+        private void add(final long nanos, final long bytes) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            allocatedBytes.add(bytes);
+        }
+
+        private void merge(final Entry entry) {
+            count.add(entry.getCount());
+            totalNanos.add(entry.getTotalNanos());
+            maxNanos.accumulate(entry.getMaxNanos());
+            allocatedBytes.add(entry.getAllocatedBytes());
+        }
+
+        private void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            allocatedBytes.reset();
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getExpression() {
+            return expression;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + line + ": " + expression;
+        }
+
+    }
+
+}
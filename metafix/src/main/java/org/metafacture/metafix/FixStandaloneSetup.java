@@ -4,11 +4,13 @@ import org.metafacture.metafix.fix.Fix;
 import org.metafacture.metafix.validation.XtextValidator;
 
 import com.google.common.io.CharStreams;
+import org.eclipse.emf.common.util.URI;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.UncheckedIOException;
 
 /**
@@ -16,6 +18,11 @@ import java.io.UncheckedIOException;
  */
 public class FixStandaloneSetup extends FixStandaloneSetupGenerated {
 
+    /**
+     * The (virtual) URI of Fix definitions that are not read from a file.
+     */
+    public static final String INLINE_FIX_URI = "inline:/fix" + Metafix.FIX_EXTENSION;
+
     public FixStandaloneSetup() {
     }
 
@@ -28,16 +35,21 @@ public class FixStandaloneSetup extends FixStandaloneSetupGenerated {
     }
 
     public static Fix parseFix(final String path) {
-        return (Fix) XtextValidator.getValidatedResource(path, new FixStandaloneSetup()).getContents().get(0);
+        return FixArtifactCache.get(path, () -> (Fix) XtextValidator.getValidatedResource(path, new FixStandaloneSetup()).getContents().get(0));
     }
 
     public static Fix parseFix(final Reader fixDef) {
+        final String content;
+
         try {
-            return parseFix(absPathToTempFile(fixDef, ".fix"));
+            content = CharStreams.toString(fixDef);
         }
         catch (final IOException e) {
             throw new UncheckedIOException(e);
         }
+
+        return FixArtifactCache.get(content, URI.createURI(INLINE_FIX_URI), () -> (Fix) XtextValidator
+                .getValidatedResource(new StringReader(content), INLINE_FIX_URI, new FixStandaloneSetup()).getContents().get(0));
     }
 
     public static String absPathToTempFile(final Reader fixDef, final String suffix) throws IOException {
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.framework.MetafactureException;
+import org.metafacture.framework.ObjectPipe;
+import org.metafacture.framework.StandardEventNames;
+import org.metafacture.framework.StreamReceiver;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Reads JSON lines (or, more generally, a sequence of JSON objects) and
+ * transforms them like {@link Metafix}, but builds the {@link Record records}
+ * directly from the parser's tokens instead of going through {@link
+ * StreamReceiver} events (as with {@code decode-json | fix}). The resulting
+ * records are the same: arrays are marked with {@value Metafix#ARRAY_MARKER},
+ * numbers and booleans become strings, nulls are dropped, and records are
+ * numbered consecutively (starting at 1).
+ *
+ * Input is either read from a {@link Reader} or, via {@link #process(Path)},
+ * from a (UTF-8 encoded) memory-mapped file. The transformed records are sent
+ * to the receiver as events.
+ */
+public class JsonLinesMetafix implements ObjectPipe<Reader, StreamReceiver> {
+
+    // files are mapped in a window that slides along them, so that only a
+    // small region of a large file is mapped (and held on to) at a time
+    private static final long REGION_SIZE = 1L << 24;
+
+    private final Metafix metafix;
+
+    private int recordCount;
+
+    public JsonLinesMetafix(final String fixDef) throws FileNotFoundException {
+        this(fixDef, Metafix.NO_VARS);
+    }
+
+    public JsonLinesMetafix(final String fixDef, final Map<String, String> vars) throws FileNotFoundException {
+        metafix = new Metafix(fixDef, vars);
+    }
+
+    public void setStrictness(final Metafix.Strictness strictness) {
+        metafix.setStrictness(strictness);
+    }
+
+    public Metafix.Strictness getStrictness() {
+        return metafix.getStrictness();
+    }
+
+    public void setStrictnessHandlesProcessExceptions(final boolean strictnessHandlesProcessExceptions) {
+        metafix.setStrictnessHandlesProcessExceptions(strictnessHandlesProcessExceptions);
+    }
+
+    public boolean getStrictnessHandlesProcessExceptions() {
+        return metafix.getStrictnessHandlesProcessExceptions();
+    }
+
+    public void setRepeatedFieldsToEntities(final boolean repeatedFieldsToEntities) {
+        metafix.setRepeatedFieldsToEntities(repeatedFieldsToEntities);
+    }
+
+    public boolean getRepeatedFieldsToEntities() {
+        return metafix.getRepeatedFieldsToEntities();
+    }
+
+    public void setPrefetchWindow(final int prefetchWindow) {
+        metafix.setPrefetchWindow(prefetchWindow);
+    }
+
+    public int getPrefetchWindow() {
+        return metafix.getPrefetchWindow();
+    }
+
+    public void setReuseRecords(final boolean reuseRecords) {
+        metafix.setReuseRecords(reuseRecords);
+    }
+
+    public boolean getReuseRecords() {
+        return metafix.getReuseRecords();
+    }
+
+    public void setValuePoolSize(final int valuePoolSize) {
+        metafix.setValuePoolSize(valuePoolSize);
+    }
+
+    public int getValuePoolSize() {
+        return metafix.getValuePoolSize();
+    }
+
+    public Metafix getMetafix() {
+        return metafix;
+    }
+
+    @Override
+    public <R extends StreamReceiver> R setReceiver(final R streamReceiver) {
+        return metafix.setReceiver(streamReceiver);
+    }
+
+    /**
+     * Reads and transforms all records from the given reader, which is not
+     * closed.
+     *
+     * @param reader the reader
+     */
+    @Override
+    public void process(final Reader reader) {
+        try (JsonParser jsonParser = JsonSupport.FACTORY.createParser(reader)) {
+            process(jsonParser);
+        }
+        catch (final IOException e) {
+            throw new MetafactureException(e);
+        }
+    }
+
+    /**
+     * Reads and transforms all records from the given UTF-8 encoded file,
+     * which is memory-mapped region by region instead of being read through a
+     * buffer.
+     *
+     * @param file the file
+     */
+    public void process(final Path file) {
+        try (
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            JsonParser jsonParser = JsonSupport.FACTORY.createParser(new MappedInputStream(channel))
+        ) {
+            process(jsonParser);
+        }
+        catch (final IOException e) {
+            throw new MetafactureException(e);
+        }
+    }
+
+    private void process(final JsonParser jsonParser) throws IOException {
+        for (JsonToken token = jsonParser.nextToken(); token != null; token = jsonParser.nextToken()) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new MetafactureException("Unexpected token '" + token + "' at " + jsonParser.getCurrentLocation());
+            }
+
+            final String identifier = String.valueOf(++recordCount);
+
+            final Record record = metafix.newRecord();
+            record.putVirtualField(StandardEventNames.ID, new Value(identifier));
+
+            parseHash(jsonParser, record, null);
+            metafix.processRecord(identifier, record);
+        }
+    }
+
+    // adds the fields of the current object, the same way Metafix#addValue would
+    private void parseHash(final JsonParser jsonParser, final Value.Hash hash, final Value hashValue) throws IOException {
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = jsonParser.getCurrentName();
+            final JsonToken token = jsonParser.nextToken();
+
+            final Value value = newValue(jsonParser, token);
+
+            if (value != null) {
+                final String field = metafix.internName(token == JsonToken.START_ARRAY ? name + Metafix.ARRAY_MARKER : name);
+
+                if (hashValue != null) {
+                    value.withPathOf(hashValue);
+                }
+
+                hash.addField(field, value);
+
+                parseEntity(jsonParser, value);
+            }
+        }
+    }
+
+    private void parseArray(final JsonParser jsonParser, final Value arrayValue) throws IOException {
+        final Value.Array array = arrayValue.asArray();
+
+        for (JsonToken token = jsonParser.nextToken(); token != JsonToken.END_ARRAY; token = jsonParser.nextToken()) {
+            final Value value = newValue(jsonParser, token);
+
+            if (value != null) {
+                array.add(value.withPathOf(arrayValue));
+                parseEntity(jsonParser, value);
+            }
+        }
+    }
+
+    // fills the value after it has been added, so that its path is known
+    private void parseEntity(final JsonParser jsonParser, final Value value) throws IOException {
+        if (value.isArray()) {
+            parseArray(jsonParser, value);
+        }
+        else if (value.isHash()) {
+            parseHash(jsonParser, value.asHash(), value);
+        }
+    }
+
+    // returns an empty entity for the start of an array or object, and null for a null value
+    private Value newValue(final JsonParser jsonParser, final JsonToken token) throws IOException {
+        final Value value;
+
+        switch (token) {
+            case START_ARRAY:
+                value = Value.newArray();
+                break;
+            case START_OBJECT:
+                value = metafix.newHash();
+                break;
+            case VALUE_NULL:
+                value = null;
+                break;
+            default:
+                value = new Value(metafix.internValue(jsonParser.getText()));
+        }
+
+        return value;
+    }
+
+    @Override
+    public void resetStream() {
+        recordCount = 0;
+        metafix.resetStream();
+    }
+
+    @Override
+    public void closeStream() {
+        metafix.closeStream();
+    }
+
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private MappedByteBuffer buffer;
+        private boolean closed;
+        private long position;
+
+        private MappedInputStream(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return nextRegion() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            final int count;
+
+            if (length == 0) {
+                count = 0;
+            }
+            else if (nextRegion()) {
+                count = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, count);
+            }
+            else {
+                count = -1;
+            }
+
+            return count;
+        }
+
+        // maps the next region once the current one has been consumed; false at the end of the file (or once closed)
+        private boolean nextRegion() throws IOException {
+            if (buffer == null || !buffer.hasRemaining()) {
+                // the consumed region is unmapped when it's garbage collected
+                buffer = null;
+
+                final long size = closed ? 0 : Math.min(channel.size() - position, REGION_SIZE);
+
+                if (size <= 0) {
+                    return false;
+                }
+
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                position += size;
+            }
+
+            return true;
+        }
+
+        // the channel is closed by its owner
+        @Override
+        public void close() {
+            closed = true;
+            buffer = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Serializes {@link JsonValue JSON values} with a single shared (thread-safe)
+ * {@link JsonFactory}. Serializing to a string reuses a generator per thread
+ * (and per pretty-printing mode), which writes into a recycled buffer.
+ */
+/*package-private*/ final class JsonSupport {
+
+    /*package-private*/ static final JsonFactory FACTORY = new JsonFactory()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+        .setRootValueSeparator(null);
+
+    // larger buffers are dropped after use, so that a single huge record doesn't pin them
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Buffer> COMPACT = ThreadLocal.withInitial(() -> new Buffer(false));
+    private static final ThreadLocal<Buffer> PRETTY = ThreadLocal.withInitial(() -> new Buffer(true));
+
+    private JsonSupport() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /*package-private*/ static String toString(final JsonValue value, final boolean prettyPrinting) throws IOException {
+        final ThreadLocal<Buffer> buffers = prettyPrinting ? PRETTY : COMPACT;
+        final Buffer buffer = buffers.get();
+
+        boolean reusable = false;
+
+        try {
+            write(value, buffer.generator);
+            buffer.generator.flush();
+
+            final StringBuffer result = buffer.writer.getBuffer();
+            reusable = result.capacity() <= MAX_BUFFER_SIZE;
+
+            return result.toString();
+        }
+        finally {
+            if (reusable) {
+                buffer.writer.getBuffer().setLength(0);
+            }
+            else {
+                // the generator may have been left in the middle of a value
+                buffers.remove();
+            }
+        }
+    }
+
+    /*package-private*/ static void write(final JsonValue value, final Writer writer, final boolean prettyPrinting) throws IOException {
+        try (JsonGenerator jsonGenerator = configure(FACTORY.createGenerator(writer), prettyPrinting)) {
+            write(value, jsonGenerator);
+        }
+    }
+
+    /*package-private*/ static void write(final JsonValue value, final OutputStream outputStream, final boolean prettyPrinting) throws IOException {
+        try (JsonGenerator jsonGenerator = configure(FACTORY.createGenerator(outputStream, JsonEncoding.UTF8), prettyPrinting)) {
+            write(value, jsonGenerator);
+        }
+    }
+
+    private static void write(final JsonValue value, final JsonGenerator jsonGenerator) throws IOException {
+        try {
+            value.toJson(jsonGenerator);
+        }
+        catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static JsonGenerator configure(final JsonGenerator jsonGenerator, final boolean prettyPrinting) {
+        // no separators between root values, since generators are reused
+        return jsonGenerator.setPrettyPrinter(prettyPrinting ? new DefaultPrettyPrinter().withRootSeparator("") : null);
+    }
+
+    private static final class Buffer {
+
+        private final StringWriter writer = new StringWriter();
+        private final JsonGenerator generator;
+
+        private Buffer(final boolean prettyPrinting) {
+            try {
+                generator = configure(FACTORY.createGenerator(writer), prettyPrinting);
+            }
+            catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+}
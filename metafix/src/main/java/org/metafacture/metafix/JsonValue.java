@@ -16,16 +16,15 @@
 
 package org.metafacture.metafix;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.core.SerializableString;
-import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import java.io.IOException;
-import java.io.StringWriter;
-import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.function.UnaryOperator;
 
 // TODO: Utilize JsonDecoder/JsonEncoder instead?
 
@@ -39,49 +38,157 @@ public interface JsonValue {
     }
 
     default String toJson(final boolean prettyPrinting) throws IOException {
-        final StringWriter writer = new StringWriter();
-        final JsonGenerator jsonGenerator = new JsonFactory().createGenerator(writer);
-        jsonGenerator.setPrettyPrinter(prettyPrinting ? new DefaultPrettyPrinter((SerializableString) null) : null);
-
-        try {
-            toJson(jsonGenerator);
-        }
-        catch (final UncheckedIOException e) {
-            throw e.getCause();
-        }
+        return JsonSupport.toString(this, prettyPrinting);
+    }
 
-        jsonGenerator.flush();
+    /**
+     * Writes this value as JSON to the given writer, which is neither closed
+     * nor buffered in between.
+     *
+     * @param writer the writer
+     * @param prettyPrinting true to pretty-print the JSON, false otherwise
+     * @throws IOException if an I/O error occurs
+     */
+    default void toJson(final Writer writer, final boolean prettyPrinting) throws IOException {
+        JsonSupport.write(this, writer, prettyPrinting);
+    }
 
-        return writer.toString();
+    /**
+     * Writes this value as UTF-8 encoded JSON to the given output stream,
+     * which is not closed.
+     *
+     * @param outputStream the output stream
+     * @param prettyPrinting true to pretty-print the JSON, false otherwise
+     * @throws IOException if an I/O error occurs
+     */
+    default void toJson(final OutputStream outputStream, final boolean prettyPrinting) throws IOException {
+        JsonSupport.write(this, outputStream, prettyPrinting);
     }
 
+    /**
+     * Parses JSON into {@link Value values}, building hashes and arrays
+     * directly from the parser's tokens without an intermediate tree. Only
+     * strings are retained as scalar values; other scalars are parsed as
+     * null.
+     *
+     * Nesting is limited to {@value #DEFAULT_MAX_DEPTH} levels (or as
+     * configured with the system property {@value #MAX_DEPTH_PROPERTY}); the
+     * length of the source can be limited with the system property {@value
+     * #MAX_LENGTH_PROPERTY}. Exceeding either limit fails like a syntax error.
+     */
     class Parser {
 
-        private static final ObjectMapper MAPPER = new ObjectMapper();
+        public static final String MAX_DEPTH_PROPERTY = "org.metafacture.metafix.jsonMaxDepth";
+        public static final String MAX_LENGTH_PROPERTY = "org.metafacture.metafix.jsonMaxLength";
+
+        public static final int DEFAULT_MAX_DEPTH = 1000;
+        public static final int DEFAULT_MAX_LENGTH = Integer.MAX_VALUE;
+
+        private static final int MAX_DEPTH = Integer.getInteger(MAX_DEPTH_PROPERTY, DEFAULT_MAX_DEPTH);
+        private static final int MAX_LENGTH = Integer.getInteger(MAX_LENGTH_PROPERTY, DEFAULT_MAX_LENGTH);
+
+        private final UnaryOperator<String> nameInterner;
+        private final UnaryOperator<String> valueInterner;
+
+        private int maxDepth = MAX_DEPTH;
+        private int maxLength = MAX_LENGTH;
 
         public Parser() {
+            this(UnaryOperator.identity(), UnaryOperator.identity());
+        }
+
+        /**
+         * Creates a parser which passes field names and string values through
+         * the given interners.
+         *
+         * @param nameInterner the interner for field names
+         * @param valueInterner the interner for string values
+         */
+        public Parser(final UnaryOperator<String> nameInterner, final UnaryOperator<String> valueInterner) {
+            this.nameInterner = nameInterner;
+            this.valueInterner = valueInterner;
+        }
+
+        public void setMaxDepth(final int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public void setMaxLength(final int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        public int getMaxLength() {
+            return maxLength;
         }
 
         public Value parse(final String source) throws IOException {
-            return parse(MAPPER.readTree(source));
+            try (JsonParser jsonParser = JsonSupport.FACTORY.createParser(source)) {
+                if (source.length() > maxLength) {
+                    throw new JsonParseException(jsonParser, "Maximum length exceeded: " + source.length() + " > " + maxLength);
+                }
+
+                final JsonToken token = jsonParser.nextToken();
+                return token != null ? parse(jsonParser, token, 0) : new Value((String) null);
+            }
         }
 
-        private Value parse(final JsonNode node) {
+        private Value parse(final JsonParser jsonParser, final JsonToken token, final int depth) throws IOException {
             final Value value;
 
-            if (node.isObject()) {
-                value = Value.newHash(h -> node.fields().forEachRemaining(e -> h.put(e.getKey(), parse(e.getValue()))));
+            switch (token) {
+                case START_OBJECT:
+                    value = parseHash(jsonParser, depth);
+                    break;
+                case START_ARRAY:
+                    value = parseArray(jsonParser, depth);
+                    break;
+                case VALUE_STRING:
+                    value = new Value(valueInterner.apply(jsonParser.getText()));
+                    break;
+                default:
+                    value = new Value((String) null);
             }
-            else if (node.isArray()) {
-                value = Value.newArray(a -> node.elements().forEachRemaining(v -> a.add(parse(v))));
+
+            return value;
+        }
+
+        private Value parseHash(final JsonParser jsonParser, final int depth) throws IOException {
+            checkDepth(jsonParser, depth);
+
+            final Value value = Value.newHash();
+            final Value.Hash hash = value.asHash();
+
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = nameInterner.apply(jsonParser.getCurrentName());
+                hash.put(field, parse(jsonParser, jsonParser.nextToken(), depth + 1));
             }
-            else {
-                value = new Value(node.textValue());
+
+            return value;
+        }
+
+        private Value parseArray(final JsonParser jsonParser, final int depth) throws IOException {
+            checkDepth(jsonParser, depth);
+
+            final Value value = Value.newArray();
+            final Value.Array array = value.asArray();
+
+            for (JsonToken token = jsonParser.nextToken(); token != JsonToken.END_ARRAY; token = jsonParser.nextToken()) {
+                array.add(parse(jsonParser, token, depth + 1));
             }
 
             return value;
         }
 
+        private void checkDepth(final JsonParser jsonParser, final int depth) throws JsonParseException {
+            if (depth >= maxDepth) {
+                throw new JsonParseException(jsonParser, "Maximum nesting depth exceeded: " + maxDepth);
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.metafix.maps.BatchMap;
+import org.metafacture.metamorph.api.Maps;
+import org.metafacture.metamorph.api.helpers.AbstractReadOnlyMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Fetches the values of all {@code lookup} expressions for a window of records
+ * ahead of time, with one call per {@link BatchMap}. The keys are taken from
+ * the untransformed records, so values that only come into existence during
+ * the transformation (or lookups that aren't executed at all) are missed (or
+ * fetched in vain, respectively); these are looked up individually as usual.
+ */
+/*package-private*/ final class LookupPrefetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LookupPrefetcher.class);
+
+    private static final int MAP_NAME_INDEX = 1;
+
+    private static final String MATCH_OPTION = "match";
+
+    private final List<Supplier<List<String>>> lookups = new ArrayList<>();
+    private final List<Supplier<Map<String, String>>> lookupOptions = new ArrayList<>();
+    private final Map<String, Map<String, String>> prefetched = new HashMap<>();
+
+    /*package-private*/ LookupPrefetcher() {
+    }
+
+    /**
+     * Registers a {@code lookup} expression.
+     *
+     * @param params the supplier of the expression's (resolved) params
+     * @param options the supplier of the expression's (resolved) options
+     */
+    /*package-private*/ void addLookup(final Supplier<List<String>> params, final Supplier<Map<String, String>> options) {
+        lookups.add(params);
+        lookupOptions.add(options);
+    }
+
+    /**
+     * Fetches the values for the given records. They remain available until
+     * they are {@link #clear() cleared}.
+     *
+     * @param metafix the Metafix instance providing the maps
+     * @param records the records
+     */
+    /*package-private*/ void prefetch(final Metafix metafix, final List<Record> records) {
+        final Map<String, Set<String>> keys = new HashMap<>();
+
+        for (int i = 0; i < lookups.size(); ++i) {
+            try {
+                final List<String> params = lookups.get(i).get();
+
+                // only exact keys can be prefetched
+                if (params.size() > MAP_NAME_INDEX && metafix.getMap(params.get(MAP_NAME_INDEX)) instanceof BatchMap &&
+                        !lookupOptions.get(i).get().containsKey(MATCH_OPTION)) {
+                    final Set<String> mapKeys = keys.computeIfAbsent(params.get(MAP_NAME_INDEX), k -> new HashSet<>());
+                    final FixPath path = FixPath.of(params, 0);
+
+                    // lookup falls back to the default value for each record
+                    mapKeys.add(Maps.DEFAULT_MAP_KEY);
+
+                    // non-string values can't be looked up and are skipped
+                    records.forEach(r -> Value.asList(path.findIn(r), a -> a.forEach(v -> {
+                        if (v.isString()) {
+                            mapKeys.add(v.asString());
+                        }
+                    })));
+                }
+            }
+            catch (final IllegalArgumentException | IllegalStateException e) {
+                // e.g., variables that are only defined at runtime, or paths that don't match the record's structure
+                LOG.debug("Skipping lookup prefetch", e);
+            }
+        }
+
+        // send all requests before waiting for any of them
+        final Map<String, CompletableFuture<Map<String, String>>> futures = new HashMap<>();
+        keys.forEach((mapName, mapKeys) -> futures.put(mapName, ((BatchMap) metafix.getMap(mapName)).getAllAsync(mapKeys)));
+
+        futures.forEach((mapName, future) -> {
+            try {
+                prefetched.put(mapName, new PrefetchedMap(metafix.getMap(mapName), keys.get(mapName), future.join()));
+            }
+            catch (final CompletionException e) {
+                LOG.warn("Failed to prefetch lookup values from map '{}'", mapName, e.getCause());
+            }
+        });
+    }
+
+    /**
+     * Returns the map with the prefetched values for the given map name.
+     *
+     * @param mapName the map name
+     * @return the map, or null if no values have been prefetched
+     */
+    /*package-private*/ Map<String, String> getMap(final String mapName) {
+        return prefetched.isEmpty() ? null : prefetched.get(mapName);
+    }
+
+    /**
+     * Discards the prefetched values.
+     */
+    /*package-private*/ void clear() {
+        prefetched.clear();
+    }
+
+    private static final class PrefetchedMap extends AbstractReadOnlyMap<String, String> {
+
+        private final Map<String, String> map;
+        private final Map<String, String> values;
+        private final Set<String> keys;
+
+        private PrefetchedMap(final Map<String, String> map, final Set<String> keys, final Map<String, String> values) {
+            this.map = map;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public String get(final Object key) {
+            final String value = values.get(key);
+            return value != null || keys.contains(key) ? value : map.get(key);
+        }
+
+        @Override
+        public String getOrDefault(final Object key, final String defaultValue) {
+            final String value = get(key);
+            return value != null ? value : defaultValue;
+        }
+
+    }
+
+}
@@ -22,9 +22,9 @@ import org.metafacture.framework.MetafactureException;
 import org.metafacture.framework.StandardEventNames;
 import org.metafacture.framework.StreamPipe;
 import org.metafacture.framework.StreamReceiver;
-import org.metafacture.framework.helpers.DefaultStreamReceiver;
-import org.metafacture.mangling.StreamFlattener;
 import org.metafacture.metafix.fix.Expression;
+import org.metafacture.metafix.maps.CachedMap;
+import org.metafacture.metafix.maps.MapMatcher;
 import org.metafacture.metamorph.api.Maps;
 
 import org.slf4j.Logger;
@@ -36,13 +36,16 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
@@ -70,25 +73,54 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
 
     private static final String ENTITIES_NOT_BALANCED = "Entity starts and ends are not balanced";
 
-    private final Deque<Integer> entityCountStack = new LinkedList<>();
+    private static final int INITIAL_ENTITY_DEPTH = 16;
+
+    private static final int INDEX_NAMES_SIZE = 1024;
+
+    // 1-based entity names for array elements (and nested arrays)
+    private static final String[] INDEX_NAMES = new String[INDEX_NAMES_SIZE];
+    private static final String[] INDEX_ARRAY_NAMES = new String[INDEX_NAMES_SIZE];
+
+    static {
+        for (int i = 0; i < INDEX_NAMES_SIZE; ++i) {
+            INDEX_NAMES[i] = String.valueOf(i + 1);
+            INDEX_ARRAY_NAMES[i] = INDEX_NAMES[i] + ARRAY_MARKER;
+        }
+    }
+
+    private final Deque<Record> recordPool = new ArrayDeque<>();
+    private final Deque<Value> hashPool = new ArrayDeque<>();
     private final List<Closeable> resources = new ArrayList<>();
     private final List<Expression> expressions = new ArrayList<>();
+    private final List<Record> usedRecords = new ArrayList<>();
+    private final List<Record> window = new ArrayList<>();
+    private final List<Value> usedHashes = new ArrayList<>();
+    private final List<String> windowIdentifiers = new ArrayList<>();
+    private final LookupPrefetcher lookupPrefetcher = new LookupPrefetcher();
     private final Map<String, Map<String, String>> maps = new HashMap<>();
     private final Map<String, RecordTransformer> fixCache = new HashMap<>();
     private final Map<String, RecordTransformer> macros = new HashMap<>();
     private final Map<String, String> vars = new HashMap<>();
+    private final FixProfiler profiler = new FixProfiler();
     private final RecordTransformer recordTransformer;
-    private final StreamFlattener flattener = new StreamFlattener();
+    private final SymbolTable symbols = new SymbolTable();
+    private final BiConsumer<String, Value> emitter = this::emit;
 
-    private List<Value> entities = new ArrayList<>();
+    private FixProfiler.Format profileFormat = FixProfiler.Format.TABLE;
     private Record currentRecord = new Record();
     private StreamReceiver outputStreamReceiver;
+    private StringPool valuePool;
     private Strictness strictness = DEFAULT_STRICTNESS;
     private String fixFile;
+    private String profileFile;
     private String recordIdentifier;
+    private Value[] entityStack = new Value[INITIAL_ENTITY_DEPTH];
     private boolean repeatedFieldsToEntities;
+    private boolean reuseRecords;
     private boolean strictnessHandlesProcessExceptions;
-    private int entityCount;
+    private int entityDepth;
+    private int prefetchWindow;
+    private int valuePoolSize;
 
     public Metafix() {
         this(NO_VARS);
@@ -108,7 +140,8 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
 
         if (isFixFile(fixDef)) {
             fixFile = fixDef;
-            recordTransformer = getRecordTransformer(fixDef);
+            // not shared with includes of the same file, see RecordTransformer#isInitializer
+            recordTransformer = new RecordTransformer(this, FixStandaloneSetup.parseFix(fixDef), true);
         }
         else {
             recordTransformer = getRecordTransformer(new StringReader(fixDef));
@@ -125,18 +158,6 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
     }
 
     private void init(final Map<String, String> newVars) {
-        flattener.setReceiver(new DefaultStreamReceiver() {
-
-            @Override
-            public void literal(final String name, final String value) {
-                final String[] split = Value.split(name);
-                addValue(split[split.length - 1], new Value(value));
-                // TODO use full path here to insert only once?
-                // new FixPath(name).insertInto(currentRecord, InsertMode.APPEND, new Value(value));
-            }
-
-        });
-
         vars.putAll(newVars);
     }
 
@@ -163,7 +184,7 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
     }
 
     private RecordTransformer getRecordTransformer(final Reader fixDef) {
-        return new RecordTransformer(this, FixStandaloneSetup.parseFix(fixDef));
+        return new RecordTransformer(this, FixStandaloneSetup.parseFix(fixDef), true);
     }
 
     public void putMacro(final String name, final RecordTransformer macro) {
@@ -180,59 +201,167 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
 
     @Override
     public void startRecord(final String identifier) {
-        currentRecord = new Record();
+        currentRecord = newRecord();
         currentRecord.putVirtualField(StandardEventNames.ID, new Value(identifier));
         LOG.debug("Start record: {}", identifier);
-        flattener.startRecord(identifier);
-        entityCountStack.clear();
-        entityCount = 0;
-        entityCountStack.add(Integer.valueOf(entityCount));
         recordIdentifier = identifier;
-        entities = new ArrayList<>();
+        entityDepth = 0;
     }
 
     @Override
     public void endRecord() {
-        entityCountStack.removeLast();
-        if (!entityCountStack.isEmpty()) {
+        if (entityDepth != 0) {
             throw new IllegalStateException(ENTITIES_NOT_BALANCED);
         }
-        flattener.endRecord();
-        LOG.debug("End record, walking Fix: {}", currentRecord);
-        recordTransformer.transform(currentRecord);
-        if (!currentRecord.getReject()) {
-            outputStreamReceiver.startRecord(recordIdentifier);
+
+        processRecord(recordIdentifier, currentRecord);
+    }
+
+    // transforms (or, with a prefetch window, queues) a complete record, however it was built
+    /*package-private*/ void processRecord(final String identifier, final Record record) {
+        if (prefetchWindow > 0) {
+            window.add(record);
+            windowIdentifiers.add(identifier);
+
+            if (window.size() >= prefetchWindow) {
+                processWindow();
+            }
+        }
+        else {
+            currentRecord = record;
+
+            try {
+                process(identifier, record);
+            }
+            finally {
+                recycle();
+            }
+        }
+    }
+
+    private void process(final String identifier, final Record record) {
+        LOG.debug("End record, walking Fix: {}", record);
+        recordTransformer.transform(record);
+        if (!record.getReject()) {
             LOG.debug("Sending results to {}", outputStreamReceiver);
-            currentRecord.forEach(this::emit);
-            outputStreamReceiver.endRecord();
+            emitRecord(identifier, record);
+        }
+    }
+
+    // transforms and emits the records buffered for prefetching
+    /*package-private*/ void processWindow() {
+        if (!window.isEmpty()) {
+            lookupPrefetcher.prefetch(this, window);
+
+            try {
+                for (int i = 0; i < window.size(); ++i) {
+                    currentRecord = window.get(i);
+                    process(windowIdentifiers.get(i), currentRecord);
+                }
+            }
+            finally {
+                lookupPrefetcher.clear();
+                window.clear();
+                windowIdentifiers.clear();
+                recycle();
+            }
         }
     }
 
+    /*package-private*/ Record newRecord() {
+        if (!reuseRecords) {
+            return new Record();
+        }
+
+        final Record record = recordPool.isEmpty() ? new Record() : recordPool.pop();
+        usedRecords.add(record);
+
+        return record;
+    }
+
+    /*package-private*/ Value newHash() {
+        if (!reuseRecords) {
+            return Value.newHash();
+        }
+
+        final Value hash = hashPool.isEmpty() ? Value.newHash() : hashPool.pop();
+        usedHashes.add(hash);
+
+        return hash;
+    }
+
+    // returns the records (and their entities) that have been processed to the pools
+    private void recycle() {
+        for (final Record record : usedRecords) {
+            record.reset();
+            recordPool.push(record);
+        }
+
+        for (final Value hash : usedHashes) {
+            hashPool.push(hash.recycle());
+        }
+
+        usedRecords.clear();
+        usedHashes.clear();
+    }
+
+    /*package-private*/ void emitRecord(final String identifier, final Record record) {
+        outputStreamReceiver.startRecord(identifier);
+        record.forEach(emitter);
+        outputStreamReceiver.endRecord();
+    }
+
     private void emit(final String field, final Value value) {
-        Value.asList(value, array -> {
-            final boolean isMulti = repeatedFieldsToEntities && array.size() > 1 || isArrayName(field);
+        if (!Value.isNull(value)) {
+            final Value.Array array = value.isArray() ? value.asArray() : null;
+            final int size = array != null ? array.size() : 1;
+
+            final boolean isMulti = isMulti(field, size);
             if (isMulti) {
                 outputStreamReceiver.startEntity(field);
             }
 
-            for (int i = 0; i < array.size(); ++i) {
-                final Value currentValue = array.get(i);
-                final String fieldName = isMulti ? String.valueOf(i + 1) : field;
-
-                currentValue.matchType()
-                    .ifArray(a -> emit(isMulti ? fieldName + ARRAY_MARKER : fieldName, currentValue))
-                    .ifHash(h -> {
-                        outputStreamReceiver.startEntity(fieldName);
-                        h.forEach(this::emit);
-                        outputStreamReceiver.endEntity();
-                    })
-                    .ifString(s -> outputStreamReceiver.literal(fieldName, s));
+            for (int i = 0; i < size; ++i) {
+                emitElement(isMulti ? i : -1, field, array != null ? array.peek(i) : value);
             }
 
             if (isMulti) {
                 outputStreamReceiver.endEntity();
             }
-        });
+        }
+    }
+
+    private boolean isMulti(final String field, final int size) {
+        return repeatedFieldsToEntities && size > 1 || isArrayName(field);
+    }
+
+    private void emitElement(final int index, final String field, final Value value) {
+        final boolean isArray = value.isArray();
+        final String fieldName = index < 0 ? field : indexName(index, isArray);
+
+        if (isArray) {
+            emit(fieldName, value);
+        }
+        else if (value.isHash()) {
+            outputStreamReceiver.startEntity(fieldName);
+            value.asHash().peekEach(emitter);
+            outputStreamReceiver.endEntity();
+        }
+        else if (value.isString()) {
+            outputStreamReceiver.literal(fieldName, value.asString());
+        }
+    }
+
+    private static String indexName(final int index, final boolean isArray) {
+        final String[] names = isArray ? INDEX_ARRAY_NAMES : INDEX_NAMES;
+
+        if (index < names.length) {
+            return names[index];
+        }
+        else {
+            final String name = String.valueOf(index + 1);
+            return isArray ? name + ARRAY_MARKER : name;
+        }
     }
 
     private boolean isArrayName(final String name) {
@@ -240,17 +369,19 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
     }
 
     private void addValue(final String name, final Value value) {
-        final int index = entityCountStack.peek() - 1;
-        if (index < 0 || entities.size() <= index) {
-            currentRecord.add(name, value);
+        if (entityDepth == 0) {
+            currentRecord.addField(internName(name), value);
         }
         else {
-            final Value entity = entities.get(index);
-            value.withPathSet(entity.getPath());
-            entity.matchType()
-                .ifArray(a -> a.add(value))
-                .ifHash(h -> h.add(name, value))
-                .orElseThrow();
+            final Value entity = entityStack[entityDepth - 1];
+            value.withPathOf(entity);
+
+            if (entity.isArray()) {
+                entity.asArray().add(value);
+            }
+            else {
+                entity.asHash().addField(internName(name), value);
+            }
         }
     }
 
@@ -260,43 +391,66 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
             throw new IllegalArgumentException("Entity name must not be null.");
         }
 
-        final Value value = isArrayName(name) ? Value.newArray() : Value.newHash();
+        final Value value = isArrayName(name) ? Value.newArray() : newHash();
         addValue(name, value);
-        entities.add(value);
 
-        entityCountStack.push(Integer.valueOf(++entityCount));
-        flattener.startEntity(name);
+        if (entityDepth == entityStack.length) {
+            entityStack = Arrays.copyOf(entityStack, entityDepth * 2);
+        }
+
+        entityStack[entityDepth] = value;
+        ++entityDepth;
     }
 
     @Override
     public void endEntity() {
-        entityCountStack.pop().intValue();
-        flattener.endEntity();
+        if (entityDepth == 0) {
+            throw new IllegalStateException(ENTITIES_NOT_BALANCED);
+        }
+
+        --entityDepth;
+        entityStack[entityDepth] = null;
     }
 
     @Override
     public void literal(final String name, final String value) {
         LOG.debug("Putting '{}': '{}'", name, value);
-        flattener.literal(name, value);
+        addValue(name, new Value(internValue(value)));
     }
 
     @Override
     public void resetStream() {
+        processWindow();
         outputStreamReceiver.resetStream();
     }
 
     @Override
     public void closeStream() {
-        for (final Closeable closeable : resources) {
+        processWindow();
+
+        resources.forEach(this::close);
+
+        if (profiler.isEnabled()) {
+            writeProfile(profiler, profileFormat, profileFile);
+        }
+
+        outputStreamReceiver.closeStream();
+    }
+
+    /*package-private*/ static void writeProfile(final FixProfiler fixProfiler, final FixProfiler.Format format, final String file) {
+        final String report = fixProfiler.getReport(format);
+
+        if (file != null) {
             try {
-                closeable.close();
+                Files.write(Paths.get(file), report.getBytes(StandardCharsets.UTF_8));
             }
             catch (final IOException e) {
                 throw new UncheckedIOException(e);
             }
         }
-
-        outputStreamReceiver.closeStream();
+        else {
+            LOG.info("Fix profile:{}{}", System.lineSeparator(), report);
+        }
     }
 
     /**
@@ -333,6 +487,20 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
         return maps.getOrDefault(mapName, Collections.emptyMap());
     }
 
+    /**
+     * Returns the map for exact-key lookups, i.e., the values prefetched for
+     * the current window of records if available. The returned map only
+     * supports {@link Map#get(Object) get} and {@link Map#getOrDefault(Object,
+     * Object) getOrDefault} and must not be retained beyond the current record.
+     *
+     * @param mapName the map name
+     * @return the map
+     */
+    /*package-private*/ Map<String, String> getLookupMap(final String mapName) {
+        final Map<String, String> prefetched = lookupPrefetcher.getMap(mapName);
+        return prefetched != null ? prefetched : getMap(mapName);
+    }
+
     @Override
     public String getValue(final String mapName, final String key) {
         final Map<String, String> map = getMap(mapName);
@@ -341,16 +509,74 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
 
     @Override
     public Map<String, String> putMap(final String mapName, final Map<String, String> map) {
-        if (map instanceof Closeable) {
-            resources.add((Closeable) map);
+        final Map<String, String> previousMap = maps.put(mapName, map);
+
+        if (previousMap != map) {
+            if (map instanceof Closeable) {
+                if (map instanceof CachedMap) {
+                    // the cached map closes the wrapped map (and thus takes over the resource)
+                    final Map<String, String> wrappedMap = ((CachedMap) map).getMap();
+                    resources.removeIf(r -> r == wrappedMap);
+                }
+
+                resources.add((Closeable) map);
+            }
+
+            // a replaced map (e.g., from put_filemap inside a loop) would otherwise be held until the stream is closed
+            if (previousMap != null) {
+                release(previousMap);
+            }
         }
 
-        return maps.put(mapName, map);
+        return previousMap;
+    }
+
+    // closes a map that is no longer registered, unless it is still read through another (cached) map
+    private void release(final Map<String, String> map) {
+        if (!isInUse(map) && resources.removeIf(r -> r == map)) {
+            final Map<String, String> wrappedMap = map instanceof CachedMap ? ((CachedMap) map).getMap() : null;
+
+            if (wrappedMap instanceof Closeable && isInUse(wrappedMap)) {
+                // hand the resource back instead of closing it along with the cached map
+                resources.add((Closeable) wrappedMap);
+            }
+            else {
+                close((Closeable) map);
+            }
+        }
+    }
+
+    private boolean isInUse(final Map<String, String> map) {
+        for (final Map<String, String> registeredMap : maps.values()) {
+            Map<String, String> current = registeredMap;
+
+            while (current != map && current instanceof CachedMap) {
+                current = ((CachedMap) current).getMap();
+            }
+
+            if (current == map) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void close(final Closeable resource) {
+        try {
+            resource.close();
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
     public String putValue(final String mapName, final String key, final String value) {
-        return maps.computeIfAbsent(mapName, k -> new HashMap<>()).put(key, value);
+        final Map<String, String> map = maps.computeIfAbsent(mapName, k -> new HashMap<>());
+        MapMatcher.invalidate(map);
+
+        return map.put(key, value);
     }
 
     public void setStrictness(final Strictness strictness) {
@@ -369,6 +595,104 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
         return strictnessHandlesProcessExceptions;
     }
 
+    /**
+     * Flags whether the execution of each Fix expression should be profiled.
+     * The profile is reported when the stream is closed.
+     *
+     * @param profile true if expressions should be profiled, false otherwise
+     *
+     * @see #getProfiler()
+     */
+    public void setProfile(final boolean profile) {
+        profiler.setEnabled(profile);
+    }
+
+    public boolean getProfile() {
+        return profiler.isEnabled();
+    }
+
+    public void setProfileFormat(final FixProfiler.Format profileFormat) {
+        this.profileFormat = profileFormat != null ? profileFormat : FixProfiler.Format.TABLE;
+    }
+
+    public FixProfiler.Format getProfileFormat() {
+        return profileFormat;
+    }
+
+    /**
+     * Sets the file to write the profile to. If not set, the profile is logged.
+     *
+     * @param profileFile the profile file
+     */
+    public void setProfileFile(final String profileFile) {
+        this.profileFile = profileFile;
+    }
+
+    public String getProfileFile() {
+        return profileFile;
+    }
+
+    public FixProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Sets the number of records to buffer and process together. Before a
+     * window of records is transformed, the values of all {@code lookup}
+     * expressions in maps that support it are fetched with a single
+     * {@link org.metafacture.metafix.maps.BatchMap#getAllAsync(java.util.Collection)
+     * batch call} per map. Records are still emitted in input order.
+     *
+     * @param prefetchWindow the window size, or 0 (default) to process each
+     *                       record immediately
+     */
+    public void setPrefetchWindow(final int prefetchWindow) {
+        if (prefetchWindow < 0) {
+            throw new IllegalArgumentException("Prefetch window must not be negative: " + prefetchWindow);
+        }
+
+        this.prefetchWindow = prefetchWindow;
+    }
+
+    public int getPrefetchWindow() {
+        return prefetchWindow;
+    }
+
+    /**
+     * Sets the number of literal values to pool, so that equal values share a
+     * single string instance across records. This saves memory and speeds up
+     * comparisons (e.g. {@code uniq} or {@code in}) for data with a small
+     * vocabulary of frequent values. The least recently used values are
+     * evicted from the pool.
+     *
+     * @param valuePoolSize the maximum number of pooled values, or 0 (default)
+     *                      to not pool values
+     */
+    public void setValuePoolSize(final int valuePoolSize) {
+        if (valuePoolSize < 0) {
+            throw new IllegalArgumentException("Value pool size must not be negative: " + valuePoolSize);
+        }
+
+        this.valuePoolSize = valuePoolSize;
+        valuePool = valuePoolSize > 0 ? new StringPool(valuePoolSize) : null;
+    }
+
+    public int getValuePoolSize() {
+        return valuePoolSize;
+    }
+
+    /*package-private*/ String internName(final String name) {
+        return symbols.intern(name);
+    }
+
+    /*package-private*/ String internValue(final String value) {
+        return valuePool != null ? valuePool.intern(value) : value;
+    }
+
+    /*package-private*/ LookupPrefetcher getLookupPrefetcher() {
+        return lookupPrefetcher;
+    }
+
     public void setRepeatedFieldsToEntities(final boolean repeatedFieldsToEntities) {
         this.repeatedFieldsToEntities = repeatedFieldsToEntities;
     }
@@ -377,6 +701,30 @@ public class Metafix implements StreamPipe<StreamReceiver>, Maps {
         return repeatedFieldsToEntities;
     }
 
+    /**
+     * Sets whether to reuse the {@link Record} instances and the hash values
+     * created for entities (including their backing maps) across records
+     * instead of allocating new ones for every record.
+     *
+     * Once a record has been emitted (or rejected), this instance takes back
+     * ownership of it and of all the entities it was built from, and clears
+     * them for one of the following records. This is safe as long as nothing
+     * holds on to these values beyond the record, e.g. custom code that
+     * keeps the record passed to {@link RecordTransformer#transform(Record)}
+     * or to a {@link Strictness} handler. Values emitted to the receiver are
+     * not affected, since the receiver only gets stream events.
+     *
+     * @param reuseRecords true to reuse records, false (default) to allocate
+     *                     new ones
+     */
+    public void setReuseRecords(final boolean reuseRecords) {
+        this.reuseRecords = reuseRecords;
+    }
+
+    public boolean getReuseRecords() {
+        return reuseRecords;
+    }
+
     public enum Strictness {
 
         /**
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.flowcontrol.StreamBuffer;
+import org.metafacture.framework.MetafactureException;
+import org.metafacture.framework.StreamReceiver;
+import org.metafacture.framework.helpers.DefaultStreamPipe;
+
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Transforms a data stream like {@link Metafix}, but distributes the records
+ * among a number of worker threads. Each worker owns a separate {@link Metafix}
+ * instance (and thus its own {@link RecordTransformer}, variables and maps).
+ * Records are buffered as a whole, transformed by the next idle worker and
+ * sent to the receiver on the calling thread, either in input order or in
+ * order of completion.
+ *
+ * The number of records in flight is bounded by the {@link #setQueueSize(int)
+ * queue size}; when it is reached, the calling thread blocks until a record has
+ * been emitted.
+ *
+ * With a {@link #setPrefetchWindow(int) prefetch window}, a worker transforms
+ * that many records at once, so that their lookups can be prefetched together.
+ * When {@link #setProfile(boolean) profiling}, the workers' profiles are merged
+ * into a single one, which is reported when the stream is closed.
+ *
+ * Note that script-level state is per worker, e.g., {@code do once} blocks are
+ * executed once per worker and {@code print_record} counters are per worker.
+ */
+public class ParallelMetafix extends DefaultStreamPipe<StreamReceiver> {
+
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+
+    private final Deque<Future<StreamBuffer>> pending = new ArrayDeque<>();
+    private final FixProfiler profiler = new FixProfiler();
+    private final List<Metafix> workers = new ArrayList<>();
+    private final Map<String, String> vars;
+    private final String fixDef;
+
+    private BlockingQueue<Metafix> idleWorkers;
+    private CompletionService<StreamBuffer> completionService;
+    private ExecutorService executorService;
+    private FixProfiler.Format profileFormat = FixProfiler.Format.TABLE;
+    private Metafix.Strictness strictness = Metafix.DEFAULT_STRICTNESS;
+    private StreamBuffer currentRecords;
+    private String profileFile;
+    private boolean ordered = true;
+    private boolean repeatedFieldsToEntities;
+    private boolean reuseRecords;
+    private boolean strictnessHandlesProcessExceptions;
+    private int currentRecordCount;
+    private int inFlight;
+    private int prefetchWindow;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private int threads = DEFAULT_THREADS;
+    private int valuePoolSize;
+
+    public ParallelMetafix(final String fixDef) {
+        this(fixDef, Metafix.NO_VARS);
+    }
+
+    public ParallelMetafix(final String fixDef, final Map<String, String> vars) {
+        this.fixDef = fixDef;
+        this.vars = vars;
+    }
+
+    public void setThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+        }
+
+        this.queueSize = queueSize;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setOrdered(final boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public boolean getOrdered() {
+        return ordered;
+    }
+
+    public void setStrictness(final Metafix.Strictness strictness) {
+        this.strictness = strictness;
+    }
+
+    public Metafix.Strictness getStrictness() {
+        return strictness;
+    }
+
+    public void setStrictnessHandlesProcessExceptions(final boolean strictnessHandlesProcessExceptions) {
+        this.strictnessHandlesProcessExceptions = strictnessHandlesProcessExceptions;
+    }
+
+    public boolean getStrictnessHandlesProcessExceptions() {
+        return strictnessHandlesProcessExceptions;
+    }
+
+    public void setRepeatedFieldsToEntities(final boolean repeatedFieldsToEntities) {
+        this.repeatedFieldsToEntities = repeatedFieldsToEntities;
+    }
+
+    public boolean getRepeatedFieldsToEntities() {
+        return repeatedFieldsToEntities;
+    }
+
+    /**
+     * Sets whether each worker reuses its records.
+     *
+     * @param reuseRecords true to reuse records, false (default) to allocate
+     *                     new ones
+     *
+     * @see Metafix#setReuseRecords(boolean)
+     */
+    public void setReuseRecords(final boolean reuseRecords) {
+        this.reuseRecords = reuseRecords;
+    }
+
+    public boolean getReuseRecords() {
+        return reuseRecords;
+    }
+
+    /**
+     * Sets the number of literal values each worker pools.
+     *
+     * @param valuePoolSize the maximum number of pooled values, or 0 (default)
+     *                      to not pool values
+     *
+     * @see Metafix#setValuePoolSize(int)
+     */
+    public void setValuePoolSize(final int valuePoolSize) {
+        if (valuePoolSize < 0) {
+            throw new IllegalArgumentException("Value pool size must not be negative: " + valuePoolSize);
+        }
+
+        this.valuePoolSize = valuePoolSize;
+    }
+
+    public int getValuePoolSize() {
+        return valuePoolSize;
+    }
+
+    /**
+     * Sets the number of records a worker transforms at once, prefetching
+     * their lookup values together.
+     *
+     * @param prefetchWindow the window size, or 0 (default) to transform each
+     *                       record on its own
+     *
+     * @see Metafix#setPrefetchWindow(int)
+     */
+    public void setPrefetchWindow(final int prefetchWindow) {
+        if (prefetchWindow < 0) {
+            throw new IllegalArgumentException("Prefetch window must not be negative: " + prefetchWindow);
+        }
+
+        this.prefetchWindow = prefetchWindow;
+    }
+
+    public int getPrefetchWindow() {
+        return prefetchWindow;
+    }
+
+    /**
+     * Flags whether the execution of each Fix expression should be profiled.
+     * The workers' profiles are merged and reported when the stream is closed.
+     *
+     * @param profile true if expressions should be profiled, false otherwise
+     *
+     * @see Metafix#setProfile(boolean)
+     */
+    public void setProfile(final boolean profile) {
+        profiler.setEnabled(profile);
+    }
+
+    public boolean getProfile() {
+        return profiler.isEnabled();
+    }
+
+    public void setProfileFormat(final FixProfiler.Format profileFormat) {
+        this.profileFormat = profileFormat != null ? profileFormat : FixProfiler.Format.TABLE;
+    }
+
+    public FixProfiler.Format getProfileFormat() {
+        return profileFormat;
+    }
+
+    /**
+     * Sets the file to write the merged profile to. If not set, the profile is
+     * logged.
+     *
+     * @param profileFile the profile file
+     */
+    public void setProfileFile(final String profileFile) {
+        this.profileFile = profileFile;
+    }
+
+    public String getProfileFile() {
+        return profileFile;
+    }
+
+    public FixProfiler getProfiler() {
+        return profiler;
+    }
+
+    @Override
+    public void startRecord(final String identifier) {
+        if (executorService == null) {
+            startWorkers();
+        }
+
+        if (currentRecords == null) {
+            currentRecords = new StreamBuffer();
+        }
+
+        currentRecords.startRecord(identifier);
+    }
+
+    @Override
+    public void endRecord() {
+        currentRecords.endRecord();
+
+        if (++currentRecordCount >= prefetchWindow) {
+            submitRecords();
+        }
+    }
+
+    @Override
+    public void startEntity(final String name) {
+        currentRecords.startEntity(name);
+    }
+
+    @Override
+    public void endEntity() {
+        currentRecords.endEntity();
+    }
+
+    @Override
+    public void literal(final String name, final String value) {
+        currentRecords.literal(name, value);
+    }
+
+    @Override
+    protected void onResetStream() {
+        finish();
+    }
+
+    @Override
+    protected void onCloseStream() {
+        finish();
+
+        if (profiler.isEnabled()) {
+            Metafix.writeProfile(profiler, profileFormat, profileFile);
+        }
+    }
+
+    private void submitRecords() {
+        final StreamBuffer input = currentRecords;
+        currentRecords = null;
+        currentRecordCount = 0;
+
+        while (inFlight >= queueSize) {
+            emitNext();
+        }
+
+        final Callable<StreamBuffer> task = () -> process(input);
+        ++inFlight;
+
+        if (ordered) {
+            pending.add(executorService.submit(task));
+        }
+        else {
+            completionService.submit(task);
+        }
+
+        emitCompleted();
+    }
+
+    private void startWorkers() {
+        idleWorkers = new LinkedBlockingQueue<>(threads);
+
+        // Parse the Fix on the calling thread; Xtext setup is not thread-safe.
+        for (int i = 0; i < threads; ++i) {
+            final Metafix metafix = newWorker();
+
+            workers.add(metafix);
+            idleWorkers.add(metafix);
+        }
+
+        executorService = Executors.newFixedThreadPool(threads);
+        completionService = new ExecutorCompletionService<>(executorService);
+    }
+
+    private Metafix newWorker() {
+        final Metafix metafix;
+
+        try {
+            metafix = new Metafix(fixDef, vars);
+        }
+        catch (final FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        metafix.setStrictness(strictness);
+        metafix.setStrictnessHandlesProcessExceptions(strictnessHandlesProcessExceptions);
+        metafix.setRepeatedFieldsToEntities(repeatedFieldsToEntities);
+        metafix.setReuseRecords(reuseRecords);
+        metafix.setValuePoolSize(valuePoolSize);
+        metafix.setPrefetchWindow(prefetchWindow);
+        metafix.setProfile(profiler.isEnabled());
+
+        return metafix;
+    }
+
+    private StreamBuffer process(final StreamBuffer input) throws InterruptedException {
+        final StreamBuffer output = new StreamBuffer();
+        final Metafix metafix = idleWorkers.take();
+
+        try {
+            metafix.setReceiver(output);
+            input.setReceiver(metafix);
+            input.replay();
+
+            // a partial window must not wait for the next task's records
+            metafix.processWindow();
+        }
+        finally {
+            idleWorkers.add(metafix);
+        }
+
+        return output;
+    }
+
+    private void emitCompleted() {
+        if (ordered) {
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                emit(pending.remove());
+            }
+        }
+        else {
+            Future<StreamBuffer> future;
+            while ((future = completionService.poll()) != null) {
+                emit(future);
+            }
+        }
+    }
+
+    private void emitNext() {
+        if (ordered) {
+            emit(pending.remove());
+        }
+        else {
+            try {
+                emit(completionService.take());
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MetafactureException(e);
+            }
+        }
+    }
+
+    private void emit(final Future<StreamBuffer> future) {
+        --inFlight;
+
+        final StreamBuffer output;
+
+        try {
+            output = future.get();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetafactureException(e);
+        }
+        catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new MetafactureException(cause);
+        }
+
+        output.setReceiver(getReceiver());
+        output.replay();
+    }
+
+    private void finish() {
+        if (executorService != null) {
+            try {
+                if (currentRecords != null) {
+                    submitRecords();
+                }
+
+                while (inFlight > 0) {
+                    emitNext();
+                }
+            }
+            finally {
+                executorService.shutdownNow();
+                executorService = null;
+
+                pending.clear();
+                inFlight = 0;
+
+                // closing a worker would close the downstream receiver as well
+                workers.forEach(w -> {
+                    // the merged profile is reported instead of each worker's
+                    profiler.merge(w.getProfiler());
+                    w.setProfile(false);
+
+                    w.setReceiver(new StreamBuffer()).closeStream();
+                });
+                workers.clear();
+            }
+        }
+    }
+
+}
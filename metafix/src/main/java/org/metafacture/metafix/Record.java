@@ -19,10 +19,10 @@ package org.metafacture.metafix;
 import org.metafacture.metafix.FixPath.InsertMode;
 import org.metafacture.metafix.Value.TypeMatcher;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -59,6 +59,16 @@ public class Record extends Value.Hash {
         return clone;
     }
 
+    /**
+     * Removes all regular and <i>virtual</i> fields and clears the reject
+     * flag, so that this instance can be reused for another record.
+     */
+    /*package-private*/ void reset() {
+        clear();
+        virtualFields.clear();
+        reject = false;
+    }
+
     /**
      * Flags whether this record should be rejected.
      *
@@ -120,20 +130,38 @@ public class Record extends Value.Hash {
      */
     @Override
     public Value get(final String field) {
-        final Value result;
-        if (containsField(field)) {
-            result = super.get(field);
-        }
-        else {
-            final FixPath fixPath = new FixPath(field);
-            if (fixPath.size() > 1) {
-                result = fixPath.findIn(this);
-            }
-            else {
-                result = virtualFields.get(field);
-            }
-        }
-        return result;
+        return containsField(field) ? super.get(field) : find(FixPath.of(field));
+    }
+
+    /**
+     * Retrieves the value at the (parsed) field path from this record, like
+     * {@link #get(String)}.
+     *
+     * @param fixPath the field path
+     * @return the metadata value
+     */
+    /*package-private*/ Value get(final FixPath fixPath) {
+        final String field = fixPath.toString();
+        return containsField(field) ? super.get(field) : find(fixPath);
+    }
+
+    private Value find(final FixPath fixPath) {
+        return fixPath.size() > 1 ? fixPath.findIn(this) : virtualFields.get(fixPath.toString());
+    }
+
+    /**
+     * Retrieves the value at the field path like {@link #get(String)}, but
+     * copies shared contents along the way, so that the value is the one held
+     * by this record and can be modified in place.
+     *
+     * @param fixPath the field path
+     * @return the metadata value
+     */
+    /*package-private*/ Value getModifiable(final FixPath fixPath) {
+        final String field = fixPath.toString();
+        unshare();
+
+        return containsField(field) ? super.get(field) : fixPath.size() > 1 ? fixPath.findModifiableIn(this) : virtualFields.get(field);
     }
 
     /**
@@ -155,7 +183,11 @@ public class Record extends Value.Hash {
     }
 
     public void addNested(final String field, final Value newValue) {
-        new FixPath(field).insertInto(this, InsertMode.APPEND, newValue);
+        addNested(FixPath.of(field), newValue);
+    }
+
+    /*package-private*/ void addNested(final FixPath fixPath, final Value newValue) {
+        fixPath.insertInto(this, InsertMode.APPEND, newValue);
     }
 
     /**
@@ -166,7 +198,10 @@ public class Record extends Value.Hash {
      * @param newValue the new metadata value
      */
     public void set(final String field, final Value newValue) {
-        final FixPath fixPath = new FixPath(field);
+        set(FixPath.of(field), newValue);
+    }
+
+    /*package-private*/ void set(final FixPath fixPath, final Value newValue) {
         fixPath.insertInto(this, InsertMode.REPLACE, newValue);
     }
 
@@ -197,22 +232,30 @@ public class Record extends Value.Hash {
      * @param operator The operator
      */
     public void transform(final String field, final UnaryOperator<String> operator) {
-        final FixPath findPath = new FixPath(field);
+        transform(FixPath.of(field), operator);
+    }
+
+    /*package-private*/ void transform(final FixPath findPath, final UnaryOperator<String> operator) {
         final Value found = findPath.findIn(this, true);
         Value.asList(found, results -> {
-            final Deque<FixPath> toDelete = new LinkedList<>();
+            Deque<FixPath> toDelete = null;
             for (int i = 0; i < results.size(); ++i) {
                 final Value oldValue = results.get(i);
                 final FixPath insertPath = findPath.to(oldValue, i);
                 final String newString = operator.apply(oldValue.asString());
                 if (newString == null) {
+                    if (toDelete == null) {
+                        toDelete = new ArrayDeque<>();
+                    }
                     toDelete.addFirst(insertPath);
                 }
                 else {
                     insertPath.insertInto(this, InsertMode.REPLACE, new Value(newString));
                 }
             }
-            toDelete.forEach(path -> path.removeNestedFrom(this));
+            if (toDelete != null) {
+                toDelete.forEach(path -> path.removeNestedFrom(this));
+            }
         });
     }
 
@@ -223,7 +266,10 @@ public class Record extends Value.Hash {
      * @param consumer The consumer
      */
     public void transform(final String field, final BiConsumer<TypeMatcher, Consumer<Value>> consumer) {
-        final FixPath path = new FixPath(field);
+        transform(FixPath.of(field), consumer);
+    }
+
+    /*package-private*/ void transform(final FixPath path, final BiConsumer<TypeMatcher, Consumer<Value>> consumer) {
         final Value oldValue = path.findIn(this);
 
         if (oldValue != null) {
@@ -33,8 +33,6 @@ import org.metafacture.metafix.fix.Unless;
 
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
-import org.eclipse.xtext.nodemodel.INode;
-import org.eclipse.xtext.nodemodel.util.NodeModelUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +42,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -61,21 +60,29 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
 
     private static final Logger LOG = LoggerFactory.getLogger(RecordTransformer.class);
 
+    private static final int MAX_EXPRESSION_LENGTH = 60;
+
     private final List<Consumer<Record>> consumers = new LinkedList<>();
     private final List<Map<String, String>> vars = new ArrayList<>();
     private final Metafix metafix;
     private final RecordTransformer parent;
+    private final boolean main;
 
     private Supplier<String> currentMessageSupplier;
 
     /*package-private*/ RecordTransformer(final Metafix metafix, final Fix fix) {
-        this(metafix, fix.getElements(), null);
+        this(metafix, fix, false);
+    }
+
+    /*package-private*/ RecordTransformer(final Metafix metafix, final Fix fix, final boolean main) {
+        this(metafix, fix.getElements(), null, main);
         addVars(metafix.getVars());
     }
 
-    private RecordTransformer(final Metafix metafix, final List<Expression> expressions, final RecordTransformer parent) {
+    private RecordTransformer(final Metafix metafix, final List<Expression> expressions, final RecordTransformer parent, final boolean main) {
         this.metafix = metafix;
         this.parent = parent;
+        this.main = main;
 
         expressions.forEach(e -> {
             final Params params = new Params(e.getParams(), this);
@@ -100,7 +107,7 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
     }
 
     private RecordTransformer childTransformer(final List<Expression> expressions) {
-        return new RecordTransformer(metafix, expressions, this);
+        return new RecordTransformer(metafix, expressions, this, false);
     }
 
     public void addVars(final Map<String, String> additionalVars) {
@@ -130,7 +137,7 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
     }
 
     private void processDo(final Do expression, final Params params, final Options options) {
-        processFix(() -> executionExceptionMessage(expression), () -> {
+        processFix(expression, () -> executionExceptionMessage(expression), () -> {
             final FixContext context = getInstance(expression.getName(), FixContext.class, FixBind::valueOf);
             final RecordTransformer recordTransformer = childTransformer(expression.getElements());
 
@@ -145,7 +152,7 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
         final List<Supplier<String>> elseIfMessageSuppliers = mapList(elseIfExpressions, e -> () -> executionExceptionMessage(e, e.eResource()));
         final Supplier<String> elseMessageSupplier = () -> executionExceptionMessage(elseExpression, elseExpression.eResource());
 
-        processFix(() -> executionExceptionMessage(ifExpression, ifExpression.eResource()), () -> {
+        processFix(ifExpression, () -> executionExceptionMessage(ifExpression, ifExpression.eResource()), () -> {
             final FixPredicate ifPredicate = getInstance(ifExpression.getName(), FixPredicate.class, FixConditional::valueOf);
             final RecordTransformer ifTransformer = childTransformer(ifExpression.getElements());
 
@@ -187,7 +194,7 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
     }
 
     private void processUnless(final Unless expression, final Params params, final Options options) {
-        processFix(() -> executionExceptionMessage(expression, expression.eResource()), () -> {
+        processFix(expression, () -> executionExceptionMessage(expression, expression.eResource()), () -> {
             final FixPredicate predicate = getInstance(expression.getName(), FixPredicate.class, FixConditional::valueOf);
             final RecordTransformer recordTransformer = childTransformer(expression.getElements());
 
@@ -200,12 +207,39 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
     }
 
     private void processFunction(final MethodCall expression, final Params params, final Options options) {
-        processFix(() -> executionExceptionMessage(expression), () -> {
+        processFix(expression, () -> executionExceptionMessage(expression), () -> {
             final FixFunction function = getInstance(expression.getName(), FixFunction.class, FixMethod::valueOf);
-            return record -> function.apply(metafix, record, params.resolve(), options.resolve());
+
+            if (function == FixMethod.lookup) {
+                metafix.getLookupPrefetcher().addLookup(params::resolve, options::resolve);
+            }
+
+            final Consumer<Record> consumer = record -> function.apply(metafix, record, params.resolve(), options.resolve());
+
+            return isInitializer(function, params, options) ? once(consumer) : consumer;
         });
     }
 
+    // Only the main Fix's own top level is executed exactly once per instance; included
+    // Fixes may be executed conditionally or with different vars.
+    private boolean isInitializer(final FixFunction function, final Params params, final Options options) {
+        return main && parent == null && function instanceof FixMethod && ((FixMethod) function).isInitializer() &&
+            params.isStatic() && options.isStatic();
+    }
+
+    // Script-level state only needs to be set up with the first record; the
+    // methods are not hoisted, so that they still see the preceding state.
+    private Consumer<Record> once(final Consumer<Record> consumer) {
+        final AtomicBoolean done = new AtomicBoolean();
+
+        return record -> {
+            if (!done.get()) {
+                consumer.accept(record);
+                done.set(true);
+            }
+        };
+    }
+
     private <T> T getInstance(final String name, final Class<T> baseType, final Function<String, ? extends T> enumFunction) {
         return name.contains(".") ? ReflectionUtil.loadClass(name, baseType).newInstance() : enumFunction.apply(name);
     }
@@ -214,15 +248,24 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
         return list.stream().map(function).collect(Collectors.toList());
     }
 
-    private void processFix(final Supplier<String> messageSupplier, final Supplier<Consumer<Record>> consumerSupplier) {
+    private void processFix(final Expression expression, final Supplier<String> messageSupplier, final Supplier<Consumer<Record>> consumerSupplier) {
         currentMessageSupplier = messageSupplier;
 
         final MetafactureException exception = tryRun(() -> {
             final Consumer<Record> consumer = consumerSupplier.get();
 
+            final FixProfiler profiler = metafix.getProfiler();
+            final FixProfiler.Entry profilerEntry = profilerEntry(profiler, expression);
+
             consumers.add(record -> {
                 currentMessageSupplier = messageSupplier;
-                consumer.accept(record);
+
+                if (profiler.isEnabled()) {
+                    profiler.profile(profilerEntry, consumer, record);
+                }
+                else {
+                    consumer.accept(record);
+                }
             });
         });
 
@@ -263,10 +306,18 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
     }
 
     private String executionExceptionMessage(final EObject object, final Resource resource) {
-        final INode node = NodeModelUtils.getNode(object);
+        final FixLocation location = FixLocation.of(object);
 
         return String.format("Error while executing Fix expression (at %s, line %d): %s",
-                resource.getURI(), node.getStartLine(), NodeModelUtils.getTokenText(node));
+                resource.getURI(), location.getLine(), location.getText());
+    }
+
+    private FixProfiler.Entry profilerEntry(final FixProfiler profiler, final EObject object) {
+        final FixLocation location = FixLocation.of(object);
+        final String text = location.getText();
+
+        return profiler.getEntry(String.valueOf(object.eResource().getURI()), location.getLine(),
+                text.length() > MAX_EXPRESSION_LENGTH ? text.substring(0, MAX_EXPRESSION_LENGTH) + "..." : text);
     }
 
     private Map<String, String> getVars() {
@@ -296,10 +347,16 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
         private final boolean resolve;
 
         private Params(final List<String> list, final RecordTransformer recordTransformer) {
-            this.list = list;
             this.recordTransformer = recordTransformer;
 
             resolve = list.stream().anyMatch(this::isResolvable);
+
+            // static field paths are parsed once per expression
+            this.list = resolve ? list : new FixPath.BoundParams(list, recordTransformer.metafix::internName);
+        }
+
+        private boolean isStatic() {
+            return !resolve;
         }
 
         @Override
@@ -351,6 +408,10 @@ public class RecordTransformer { // checkstyle-disable-line ClassFanOutComplexit
             resolve = resolveTemp;
         }
 
+        private boolean isStatic() {
+            return !resolve;
+        }
+
         @Override
         protected Map<String, String> resolve() {
             if (resolve) {
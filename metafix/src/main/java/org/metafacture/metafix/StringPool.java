@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Map;
+
+/**
+ * A bounded pool of strings, so that equal literal values (e.g. language
+ * codes or material types) share a single instance across records. Besides
+ * saving memory, this makes comparing such values an identity check, and
+ * their hash code (which is cached by the string) is computed only once.
+ *
+ * The pool keeps at most the given number of strings and evicts the least
+ * recently used ones, so that it retains a small vocabulary of frequent values
+ * even when interspersed with unique ones.
+ */
+/*package-private*/ final class StringPool {
+
+    private final Map<String, String> strings;
+
+    /*package-private*/ StringPool(final int maximumSize) {
+        strings = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .<String, String>build()
+            .asMap();
+    }
+
+    /**
+     * Returns the pooled instance of the given string.
+     *
+     * @param string the string
+     * @return the pooled string (which is the given one if it wasn't pooled
+     *         before), or null if the string is null
+     */
+    public String intern(final String string) {
+        if (string == null) {
+            return null;
+        }
+
+        final String pooled = strings.putIfAbsent(string, string);
+        return pooled != null ? pooled : string;
+    }
+
+    /**
+     * Returns the number of pooled strings.
+     *
+     * @return the number of strings
+     */
+    public int size() {
+        return strings.size();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns field names, so that the records built by a {@link Metafix}
+ * instance share a single key instance per field name. The literal field
+ * names in the static field paths of the instance's Fix are interned as well.
+ * This saves the memory of duplicate names, and lookups in {@link FieldMap
+ * small hashes} usually succeed on the identity comparison. It doesn't save
+ * hashing, though: interning computes the hash code of each incoming name,
+ * since the strings delivered with the events are typically fresh instances.
+ *
+ * The table holds at most {@value #DEFAULT_MAX_SIZE} names (or as configured
+ * with the system property {@value #MAX_SIZE_PROPERTY}), so that data-driven
+ * field names can't make it grow without bounds; further names are passed
+ * through as is. Not thread-safe.
+ */
+/*package-private*/ final class SymbolTable {
+
+    public static final String MAX_SIZE_PROPERTY = "org.metafacture.metafix.symbolTableSize";
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final int MAX_SIZE = Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+
+    private final Map<String, String> symbols = new HashMap<>();
+    private final int maxSize;
+
+    /*package-private*/ SymbolTable() {
+        this(MAX_SIZE);
+    }
+
+    /*package-private*/ SymbolTable(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the canonical instance of the given field name.
+     *
+     * @param name the field name
+     * @return the interned field name, or the given one if the table is full
+     */
+    public String intern(final String name) {
+        final String symbol = symbols.get(name);
+
+        if (symbol != null) {
+            return symbol;
+        }
+
+        if (symbols.size() < maxSize) {
+            symbols.put(name, name);
+        }
+
+        return name;
+    }
+
+    /**
+     * Returns the number of interned field names.
+     *
+     * @return the number of field names
+     */
+    public int size() {
+        return symbols.size();
+    }
+
+}
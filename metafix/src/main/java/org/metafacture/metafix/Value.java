@@ -16,7 +16,6 @@
 
 package org.metafacture.metafix;
 
-import org.metafacture.commons.tries.SimpleRegexTrie;
 import org.metafacture.commons.tries.WildcardTrie;
 
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -27,9 +26,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -39,73 +36,73 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * Represents a record value, i.e., either an {@link Array}, a {@link Hash},
  * or a {@link String}.
+ *
+ * A value's {@link #getPath() path} is only built when it's requested; until
+ * then, it's kept as a chain of the field names and indexes it was inserted
+ * with.
  */
 public class Value implements JsonValue { // checkstyle-disable-line ClassDataAbstractionCoupling
 
     private static final String FIELD_PATH_SEPARATOR = "\\.";
 
-    private final Array array;
-    private final Hash hash;
-    private final String string;
+    // the Array, Hash or String (according to the type)
+    private final Object value;
 
     private final Type type;
 
-    private String path;
-
-    private Value(final Type type, final Array array, final Hash hash, final String string) {
-        final boolean hasValue = array != null || hash != null || string != null;
+    // null, a String, or a (lazily built) Path
+    private Object path;
 
+    private Value(final Type type, final Object value) {
         if (type == null) {
-            if (hasValue) {
+            if (value != null) {
                 throw new IllegalArgumentException("Value without type");
             }
         }
         else {
-            if (!hasValue) {
+            if (value == null) {
                 throw new IllegalArgumentException("Type without value");
             }
         }
 
         this.type = type;
-        this.array = array;
-        this.hash = hash;
-        this.string = string;
+        this.value = value;
     }
 
     public Value(final Array array) {
-        this(array != null ? Type.Array : null, array, null, null);
+        this(array != null ? Type.Array : null, array);
     }
 
     public Value(final List<Value> array) {
         this(array != null ? new Array() : null);
 
         if (array != null) {
-            array.forEach(this.array::add);
+            array.forEach(asArray()::add);
         }
     }
 
     public Value(final Hash hash) {
-        this(hash != null ? Type.Hash : null, null, hash, null);
+        this(hash != null ? Type.Hash : null, hash);
     }
 
     public Value(final Map<String, Value> hash) {
         this(hash != null ? new Hash() : null);
 
         if (hash != null) {
-            hash.forEach(this.hash::put);
+            hash.forEach(asHash()::put);
         }
     }
 
     public Value(final String string) {
-        this(string != null ? Type.String : null, null, null, string);
+        this(string != null ? Type.String : null, string);
     }
 
     public Value(final int integer) {
@@ -165,19 +162,39 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
     }
 
     /*package-private*/ static boolean isNumber(final String s) {
-        return s.matches("\\d+");
+        return isNumber(s, 0, s.length());
+    }
+
+    /*package-private*/ static boolean isNumber(final String s, final int start, final int end) {
+        boolean isNumber = start < end;
+
+        for (int i = start; isNumber && i < end; ++i) {
+            final char c = s.charAt(i);
+            isNumber = c >= '0' && c <= '9';
+        }
+
+        return isNumber;
     }
 
     public Array asArray() {
-        return extractType((m, c) -> m.ifArray(c).orElseThrow());
+        return asType(Type.Array, Array.class);
     }
 
     public Hash asHash() {
-        return extractType((m, c) -> m.ifHash(c).orElseThrow());
+        return asType(Type.Hash, Hash.class);
     }
 
     public String asString() {
-        return extractType((m, c) -> m.ifString(c).orElseThrow());
+        return asType(Type.String, String.class);
+    }
+
+    private <T> T asType(final Type targetType, final Class<T> targetClass) {
+        if (isType(targetType)) {
+            return targetClass.cast(value);
+        }
+        else {
+            throw new IllegalStateException("Expected " + targetType + ", got " + type);
+        }
     }
 
     public static Value asList(final Value value, final Consumer<Array> consumer) {
@@ -225,17 +242,13 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
 
         final Value other = (Value) object;
         return Objects.equals(type, other.type) &&
-            Objects.equals(array, other.array) &&
-            Objects.equals(hash, other.hash) &&
-            Objects.equals(string, other.string);
+            Objects.equals(value, other.value);
     }
 
     @Override
     public final int hashCode() {
         return Objects.hashCode(type) +
-            Objects.hashCode(array) +
-            Objects.hashCode(hash) +
-            Objects.hashCode(string);
+            Objects.hashCode(value);
     }
 
     @Override
@@ -279,7 +292,11 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
     }
 
     public String getPath() {
-        return path;
+        if (path instanceof Path) {
+            path = path.toString();
+        }
+
+        return (String) path;
     }
 
     /*package-private*/ Value withPathSet(final String p) {
@@ -287,18 +304,51 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         return this;
     }
 
+    /**
+     * Empties this hash value and forgets its path, so that it can be reused
+     * for another record.
+     *
+     * @return this value
+     */
+    /*package-private*/ Value recycle() {
+        asHash().clear();
+        path = null;
+        return this;
+    }
+
+    /*package-private*/ Value withPathOf(final Value other) {
+        this.path = other.path;
+        return this;
+    }
+
     private Value withPathAppend(final int i) {
-        return withPathAppend(String.valueOf(i));
+        path = new Path(path, null, i);
+        return this;
     }
 
     private Value withPathAppend(final String field) {
-        return withPathSet(path == null || path.isEmpty() ? field : path + "." + field);
+        path = path == null || "".equals(path) ? field : new Path(path, field, 0);
+        return this;
     }
 
+    /**
+     * Returns an independent copy of this value. Arrays and hashes are copied
+     * on write: the copy shares the original's contents until either of them
+     * is modified, and then only the top level is copied, with the elements
+     * being copied the same way. Elements handed out while the contents are
+     * shared are such copies as well.
+     *
+     * @return the copy
+     */
     /*package-private*/ Value copy() {
+        return copy(true);
+    }
+
+    // the copy's elements get paths based on the copy's own path, unless they keep the original's paths
+    private Value copy(final boolean ownPaths) {
         return extractType((m, c) -> m
-                .ifArray(oldArray -> c.accept(Value.newArray(newArray -> oldArray.forEach(v -> newArray.add(v)))))
-                .ifHash(oldHash -> c.accept(Value.newHash(newHash -> oldHash.forEach((k, v) -> newHash.put(k, v)))))
+                .ifArray(oldArray -> c.accept(oldArray.copy(ownPaths)))
+                .ifHash(oldHash -> c.accept(oldHash.copy(ownPaths)))
                 .ifString(s -> c.accept(new Value(s)))
                 .orElseThrow());
     }
@@ -309,6 +359,38 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         String
     }
 
+    /**
+     * A path that's only built when it's requested: the parent path (either a
+     * String or a Path) followed by a field name or an index.
+     */
+    private static final class Path {
+
+        private final Object parent;
+        private final String field;
+        private final int index;
+
+        private String string;
+
+        private Path(final Object parent, final String field, final int index) {
+            this.parent = parent;
+            this.field = field;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            if (string == null) {
+                final String parentString = parent != null ? parent.toString() : null;
+                final String key = field != null ? field : String.valueOf(index);
+
+                string = parentString == null || parentString.isEmpty() ? key : parentString + "." + key;
+            }
+
+            return string;
+        }
+
+    }
+
     public static class TypeMatcher {
 
         private final Set<Type> expected = EnumSet.noneOf(Type.class);
@@ -319,15 +401,15 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         }
 
         public TypeMatcher ifArray(final Consumer<Array> consumer) {
-            return match(Type.Array, consumer, value.array);
+            return match(Type.Array, consumer, Array.class);
         }
 
         public TypeMatcher ifHash(final Consumer<Hash> consumer) {
-            return match(Type.Hash, consumer, value.hash);
+            return match(Type.Hash, consumer, Hash.class);
         }
 
         public TypeMatcher ifString(final Consumer<String> consumer) {
-            return match(Type.String, consumer, value.string);
+            return match(Type.String, consumer, String.class);
         }
 
         public void orElse(final Consumer<Value> consumer) {
@@ -343,10 +425,10 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
             });
         }
 
-        private <T> TypeMatcher match(final Type type, final Consumer<T> consumer, final T rawValue) {
+        private <T> TypeMatcher match(final Type type, final Consumer<T> consumer, final Class<T> typeClass) {
             if (expected.add(type)) {
                 if (value.isType(type)) {
-                    consumer.accept(rawValue);
+                    consumer.accept(typeClass.cast(value.value));
                 }
 
                 return this;
@@ -358,6 +440,33 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
 
     }
 
+    // counts the arrays/hashes that share the same (copy-on-write) contents
+    private static final class Share {
+
+        private int holders = 1;
+
+        private Share() {
+        }
+
+        // adds a holder to the given share (or a new one for its single holder)
+        private static Share add(final Share share) {
+            final Share result = share != null ? share : new Share();
+            ++result.holders;
+            return result;
+        }
+
+        // removes a holder; returns true if the contents are still held by others (and thus must be copied)
+        private boolean release() {
+            return holders-- > 1;
+        }
+
+        // checks whether the contents are held by others as well
+        private boolean isShared() {
+            return holders > 1;
+        }
+
+    }
+
     private abstract static class AbstractValueType implements JsonValue {
 
         protected static final Predicate<Value> REMOVE_EMPTY_VALUES = v ->
@@ -394,7 +503,13 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
      */
     public static class Array extends AbstractValueType {
 
-        private final List<Value> list = new ArrayList<>();
+        private List<Value> list = new ArrayList<>();
+
+        // the holders of the list, if it's shared with copies (or the original)
+        private Share share;
+
+        // the value of a copy, which its values' paths are based on
+        private Value owner;
 
         /**
          * Creates an empty instance of {@link Array}.
@@ -402,13 +517,75 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         private Array() {
         }
 
+        /**
+         * Creates a copy-on-write copy of the given {@link Array}.
+         *
+         * @param array the original array
+         */
+        private Array(final Array array) {
+            list = array.list;
+            share = Share.add(array.share);
+            array.share = share;
+        }
+
+        private Value copy(final boolean ownPaths) {
+            final Array copy = new Array(this);
+            final Value value = new Value(copy);
+
+            if (ownPaths) {
+                copy.owner = value;
+            }
+
+            return value;
+        }
+
+        // returns the list for modifying it, copying it first if it's shared
+        private List<Value> list() {
+            if (share != null) {
+                // a copy's values (even if no longer shared) still have the original's paths
+                if (share.release() || owner != null) {
+                    final List<Value> newList = new ArrayList<>(list.size());
+
+                    for (final Value value : list) {
+                        newList.add(copyElement(value, newList.size()));
+                    }
+
+                    list = newList;
+                }
+
+                share = null;
+                owner = null;
+            }
+
+            return list;
+        }
+
+        // returns the value at the given index for handing it out, as a copy if the list is shared
+        private Value element(final int index) {
+            final Value value = list.get(index);
+            return share == null || owner == null && !share.isShared() ? value : copyElement(value, index);
+        }
+
+        private Value copyElement(final Value value, final int index) {
+            return owner != null ? value.copy().withPathOf(owner).withPathAppend(index + 1) : value.copy(false).withPathOf(value);
+        }
+
+        /**
+         * Copies the contents if they're shared, so that the values handed
+         * out afterwards are the ones held by this array and can be modified
+         * in place.
+         */
+        /*package-private*/ void unshare() {
+            list();
+        }
+
         public void add(final Value value) {
             add(value, true);
         }
 
         /* package-private */ void add(final Value value, final boolean appendToPath) {
             if (!isNull(value)) {
-                list.add(appendToPath ? value.withPathAppend(list.size() + 1) : value);
+                list().add(appendToPath ? value.withPathAppend(list.size() + 1) : value);
             }
         }
 
@@ -421,19 +598,35 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         }
 
         public Value get(final int index) {
+            return element(index);
+        }
+
+        /**
+         * Retrieves the value at the given index as it's held, even if the
+         * contents are shared. The value must not be modified.
+         *
+         * @param index the index
+         * @return the value
+         */
+        /*package-private*/ Value peek(final int index) {
             return list.get(index);
         }
 
         public Stream<Value> stream() {
-            return list.stream();
+            return share == null ? list.stream() : IntStream.range(0, list.size()).mapToObj(this::element);
         }
 
         private void removeEmptyValues() {
-            list.removeIf(REMOVE_EMPTY_VALUES);
+            list().removeIf(REMOVE_EMPTY_VALUES);
         }
 
         public void forEach(final Consumer<Value> consumer) {
-            list.forEach(consumer);
+            if (share == null) {
+                list.forEach(consumer);
+            }
+            else {
+                stream().forEach(consumer);
+            }
         }
 
         @Override
@@ -464,7 +657,7 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         public void toJson(final JsonGenerator jsonGenerator) {
             try {
                 jsonGenerator.writeStartArray();
-                forEach(v -> v.toJson(jsonGenerator));
+                list.forEach(v -> v.toJson(jsonGenerator));
                 jsonGenerator.writeEndArray();
             }
             catch (final IOException e) {
@@ -473,19 +666,27 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         }
 
         public void remove(final int index) {
-            list.remove(index);
+            list().remove(index);
         }
 
         /*package-private*/ void set(final int index, final Value value) {
-            list.set(index, value.withPathAppend(index + 1));
+            list().set(index, value.withPathAppend(index + 1));
         }
 
         /*package-private*/ void removeIf(final Predicate<Value> predicate) {
-            list.removeIf(predicate);
+            list().removeIf(predicate);
         }
 
         /*package-private*/ void removeAll() {
-            list.clear();
+            if (share != null && share.release()) {
+                list = new ArrayList<>();
+            }
+            else {
+                list.clear();
+            }
+
+            share = null;
+            owner = null;
         }
 
     }
@@ -497,14 +698,14 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
 
         // NOTE: Keep in sync with `WildcardTrie`/`SimpleRegexTrie` implementation in metafacture-core.
         private static final Pattern ALTERNATION_PATTERN = Pattern.compile(WildcardTrie.OR_STRING, Pattern.LITERAL);
-        private static final Matcher PATTERN_MATCHER = Pattern.compile("[*?]|\\[[^\\]]").matcher("");
 
-        private static final Map<String, String> PREFIX_CACHE = new HashMap<>();
+        private Map<String, Value> map = new FieldMap();
 
-        private static final Map<String, Map<String, Boolean>> TRIE_CACHE = new HashMap<>();
-        private static final SimpleRegexTrie<String> TRIE = new SimpleRegexTrie<>();
+        // the holders of the map, if it's shared with copies (or the original)
+        private Share share;
 
-        private final Map<String, Value> map = new LinkedHashMap<>();
+        // the value of a copy, which its values' paths are based on
+        private Value owner;
 
         /**
          * Creates an empty instance of {@link Hash}.
@@ -512,6 +713,63 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         protected Hash() {
         }
 
+        /**
+         * Creates a copy-on-write copy of the given {@link Hash}.
+         *
+         * @param hash the original hash
+         */
+        private Hash(final Hash hash) {
+            map = hash.map;
+            share = Share.add(hash.share);
+            hash.share = share;
+        }
+
+        private Value copy(final boolean ownPaths) {
+            final Hash copy = new Hash(this);
+            final Value value = new Value(copy);
+
+            if (ownPaths) {
+                copy.owner = value;
+            }
+
+            return value;
+        }
+
+        // returns the map for modifying it, copying it first if it's shared
+        private Map<String, Value> map() {
+            if (share != null) {
+                // a copy's values (even if no longer shared) still have the original's paths
+                if (share.release() || owner != null) {
+                    final Map<String, Value> newMap = new FieldMap();
+                    map.forEach((k, v) -> newMap.put(k, copyElement(k, v)));
+                    map = newMap;
+                }
+
+                share = null;
+                owner = null;
+            }
+
+            return map;
+        }
+
+        // returns the field value for handing it out, as a copy if the map is shared
+        private Value element(final String field, final Value value) {
+            return share == null || owner == null && !share.isShared() || value == null ? value : copyElement(field, value);
+        }
+
+        private Value copyElement(final String field, final Value value) {
+            return owner != null ? value.copy().withPathOf(owner).withPathAppend(field) : value.copy(false).withPathOf(value);
+        }
+
+        /**
+         * Copies the contents if they're shared, so that the values handed
+         * out afterwards are the ones held by this hash and can be modified
+         * in place.
+         */
+        /*package-private*/ void unshare() {
+            map();
+        }
+
         /**
          * Checks whether this hash contains the metadata field.
          *
@@ -523,17 +781,17 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         }
 
         public boolean containsPath(final String fieldPath) {
-            final String[] path = split(fieldPath);
-            final String field = path[0];
+            final int separator = fieldPath.indexOf('.');
+            final String field = separator < 0 ? fieldPath : fieldPath.substring(0, separator);
 
             final boolean containsField = containsField(field);
             final boolean containsPath;
 
-            if (containsField && path.length > 1) {
+            if (containsField && separator >= 0) {
                 final Value value;
 
                 try {
-                    value = new FixPath(fieldPath).findIn(this);
+                    value = FixPath.of(fieldPath).findIn(this);
                 }
                 catch (final IllegalStateException e) {
                     return false;
@@ -578,7 +836,7 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
 
         /*package-private*/ void put(final String field, final Value value, final boolean appendToPath) {
             if (!isNull(value)) {
-                map.put(field, appendToPath ? value.withPathAppend(field) : value);
+                map().put(field, appendToPath ? value.withPathAppend(field) : value);
             }
         }
 
@@ -617,7 +875,7 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         }
 
         public Value getField(final String field) {
-            return map.get(field);
+            return element(field, map.get(field));
         }
 
         private Value getField(final String field, final boolean enforceStringValue) {
@@ -650,19 +908,37 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
          * @param newValue the new metadata value
          */
         public void add(final String field, final Value newValue) {
-            final Value oldValue = new FixPath(field).findIn(this);
+            merge(field, FixPath.of(field).findIn(this), newValue);
+        }
+
+        /**
+         * Adds a field/value pair to this hash like {@link #add(String,
+         * Value)}, but looks up an existing value by the plain field name
+         * instead of resolving it as a path (e.g. for building a hash from
+         * stream events, where {@code a.b} or {@code $last} are just names).
+         *
+         * @param field the field name
+         * @param newValue the new metadata value
+         */
+        /*package-private*/ void addField(final String field, final Value newValue) {
+            merge(field, getField(field), newValue);
+        }
 
+        private void merge(final String field, final Value oldValue, final Value newValue) {
             if (oldValue == null) {
                 put(field, newValue);
             }
             else {
-                final String basePath = oldValue.getPath();
+                final Object basePath = oldValue.path;
                 if (!oldValue.isArray()) { // repeated field: convert single val to first in array
                     oldValue.withPathAppend(1);
                 }
 
                 put(field, oldValue.asList(oldVals -> newValue.asList(newVals ->
-                                newVals.forEach(newVal -> oldVals.add(newVal.withPathSet(basePath))))));
+                                newVals.forEach(newVal -> {
+                                    newVal.path = basePath;
+                                    oldVals.add(newVal);
+                                }))));
             }
         }
 
@@ -672,7 +948,7 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
          * @param field the field name
          */
         public void remove(final String field) {
-            final FixPath fixPath = new FixPath(field);
+            final FixPath fixPath = FixPath.of(field);
 
             if (fixPath.size() > 1) {
                 fixPath.removeNestedFrom(this);
@@ -683,7 +959,23 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         }
 
         public void removeField(final String field) {
-            map.remove(field);
+            map().remove(field);
+        }
+
+        /**
+         * Removes all field/value pairs from this hash, retaining its capacity
+         * (unless it's shared).
+         */
+        /*package-private*/ void clear() {
+            if (share != null && share.release()) {
+                map = new FieldMap();
+            }
+            else {
+                map.clear();
+            }
+
+            share = null;
+            owner = null;
         }
 
         /**
@@ -695,14 +987,14 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
             final Set<String> retainFields = new HashSet<>();
             fields.forEach(f -> retainFields.addAll(findFields(f)));
 
-            map.keySet().retainAll(retainFields);
+            map().keySet().retainAll(retainFields);
         }
 
         /**
          * Recursively removes all field/value pairs from this hash whose value is empty.
          */
         public void removeEmptyValues() {
-            map.values().removeIf(REMOVE_EMPTY_VALUES);
+            map().values().removeIf(REMOVE_EMPTY_VALUES);
         }
 
         /**
@@ -711,6 +1003,21 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
          * @param consumer the action to be performed for each field/value pair
          */
         public void forEach(final BiConsumer<String, Value> consumer) {
+            if (share == null) {
+                map.forEach(consumer);
+            }
+            else {
+                map.forEach((k, v) -> consumer.accept(k, element(k, v)));
+            }
+        }
+
+        /**
+         * Iterates over all field/value pairs in this hash as they're held,
+         * even if the contents are shared. The values must not be modified.
+         *
+         * @param consumer the action to be performed for each field/value pair
+         */
+        /*package-private*/ void peekEach(final BiConsumer<String, Value> consumer) {
             map.forEach(consumer);
         }
 
@@ -743,7 +1050,7 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
             try {
                 jsonGenerator.writeStartObject();
 
-                forEach((f, v) -> {
+                peekEach((f, v) -> {
                     try {
                         jsonGenerator.writeFieldName(f);
                     }
@@ -782,35 +1089,11 @@ public class Value implements JsonValue { // checkstyle-disable-line ClassDataAb
         }
 
         private void findFields(final String pattern, final Set<String> fieldSet) {
-            if (!PREFIX_CACHE.containsKey(pattern)) {
-                final Matcher patternMatcher = PATTERN_MATCHER.reset(pattern);
-
-                if (patternMatcher.find()) {
-                    TRIE.put(pattern, pattern);
-                    TRIE_CACHE.put(pattern, new HashMap<>());
-
-                    PREFIX_CACHE.put(pattern, pattern.substring(0, patternMatcher.start()));
-                }
-                else {
-                    PREFIX_CACHE.put(pattern, null);
-                }
-            }
-
-            final String prefix = PREFIX_CACHE.get(pattern);
-
-            if (prefix != null) {
-                final Map<String, Boolean> fieldCache = TRIE_CACHE.get(pattern);
+            final FieldMatcher fieldMatcher = FieldMatcher.of(pattern);
 
+            if (fieldMatcher.isWildcard()) {
                 for (final String field : map.keySet()) {
-                    if (!fieldCache.containsKey(field)) {
-                        final boolean matches = field.startsWith(prefix) && TRIE.get(field).contains(pattern);
-                        fieldCache.put(field, matches);
-
-                        if (matches) {
-                            fieldSet.add(field);
-                        }
-                    }
-                    else if (fieldCache.get(field)) {
+                    if (fieldMatcher.matches(field)) {
                         fieldSet.add(field);
                     }
                 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A lookup map that can look up many keys at once, e.g. with a single
+ * database query or remote request. When Metafix processes records in
+ * {@link org.metafacture.metafix.Metafix#setPrefetchWindow(int) windows}, the
+ * keys of all {@code lookup} expressions in a window are fetched with one call
+ * per map before the records are transformed.
+ */
+public interface BatchMap extends Map<String, String> {
+
+    /**
+     * Looks up the values of the given keys. Keys without a value are omitted
+     * from the result.
+     *
+     * @param keys the keys to look up
+     * @return the future key/value pairs
+     */
+    CompletableFuture<Map<String, String>> getAllAsync(Collection<String> keys);
+
+}
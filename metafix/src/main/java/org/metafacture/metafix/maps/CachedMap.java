@@ -0,0 +1,339 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.helpers.AbstractReadOnlyMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the values of a (slow) read-only lookup map, e.g. a disk-backed or
+ * database map. The cache holds a limited number of entries and evicts them
+ * either by least recent use ({@link Policy#LRU}) or by least frequent use
+ * ({@link Policy#LFU}). Optionally, keys without a value are cached as well
+ * (negative caching).
+ *
+ * The cache is safe for concurrent use; the wrapped map must be as well if the
+ * cached map is shared among threads. Closing the cached map closes the
+ * wrapped map if it's {@link Closeable}.
+ */
+public final class CachedMap extends AbstractReadOnlyMap<String, String> implements Closeable {
+
+    public static final int DEFAULT_SIZE = 10000;
+
+    private static final Object MISSING = new Object();
+
+    private final Cache cache;
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Map<String, String> map;
+    private final boolean cacheMisses;
+
+    /**
+     * Creates an instance of {@link CachedMap}.
+     *
+     * @param map the map to cache
+     * @param policy the eviction policy
+     * @param size the maximum number of cached entries
+     * @param cacheMisses true if keys without a value should be cached as well
+     */
+    public CachedMap(final Map<String, String> map, final Policy policy, final int size, final boolean cacheMisses) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + size);
+        }
+
+        this.map = map;
+        this.cacheMisses = cacheMisses;
+
+        cache = policy == Policy.LFU ? new LfuCache(size) : new LruCache(size);
+    }
+
+    /**
+     * Returns the wrapped map.
+     *
+     * @return the wrapped map
+     */
+    public Map<String, String> getMap() {
+        return map;
+    }
+
+    @Override
+    public String get(final Object key) {
+        final Object cached = cache.get(key);
+        final String value;
+
+        if (cached != null) {
+            hits.increment();
+            value = cached == MISSING ? null : (String) cached;
+        }
+        else {
+            misses.increment();
+            value = map.get(key);
+
+            if (value != null) {
+                cache.put(key, value);
+            }
+            else if (cacheMisses) {
+                cache.put(key, MISSING);
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public String getOrDefault(final Object key, final String defaultValue) {
+        final String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return map.keySet();
+    }
+
+    /**
+     * Returns the current cache statistics.
+     *
+     * @return the statistics
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), cache.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (map instanceof Closeable) {
+            ((Closeable) map).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getStats().toString();
+    }
+
+    /**
+     * Cache eviction policies.
+     */
+    public enum Policy {
+
+        /**
+         * Evicts the least recently used entry.
+         */
+        LRU,
+
+        /**
+         * Evicts the least frequently used entry (the least recently used one
+         * among those with the same frequency).
+         */
+        LFU
+
+    }
+
+    /**
+     * Snapshot of the cache statistics.
+     */
+    public static final class Stats {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long size;
+
+        private Stats(final long hitCount, final long missCount, final long evictionCount, final long size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        /**
+         * Returns the number of lookups served from the cache.
+         *
+         * @return the hit count
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Returns the number of lookups that had to query the wrapped map.
+         *
+         * @return the miss count
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns the number of entries evicted from the cache.
+         *
+         * @return the eviction count
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Returns the number of currently cached entries.
+         *
+         * @return the size
+         */
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CachedMap.Stats{hits=%d, misses=%d, evictions=%d, size=%d}",
+                    hitCount, missCount, evictionCount, size);
+        }
+
+    }
+
+    private interface Cache {
+
+        Object get(Object key);
+
+        void put(Object key, Object value);
+
+        int size();
+
+    }
+
+    private final class LruCache implements Cache {
+
+        private final Map<Object, Object> entries;
+
+        private LruCache(final int maxSize) {
+            entries = new LinkedHashMap<Object, Object>(maxSize, 0.75f, true) { // checkstyle-disable-line MagicNumber
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Object, Object> eldest) {
+                    final boolean evict = size() > maxSize;
+
+                    if (evict) {
+                        evictions.increment();
+                    }
+
+                    return evict;
+                }
+            };
+        }
+
+        @Override
+        public synchronized Object get(final Object key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public synchronized void put(final Object key, final Object value) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public synchronized int size() {
+            return entries.size();
+        }
+
+    }
+
+    private final class LfuCache implements Cache {
+
+        // frequency -> keys with that frequency, in order of their last use
+        private final Map<Integer, Set<Object>> buckets = new HashMap<>();
+        private final Map<Object, Integer> frequencies = new HashMap<>();
+        private final Map<Object, Object> entries = new HashMap<>();
+        private final int maxSize;
+
+        private int minFrequency;
+
+        private LfuCache(final int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public synchronized Object get(final Object key) {
+            final Object value = entries.get(key);
+
+            if (value != null) {
+                final int frequency = frequencies.get(key);
+                final Set<Object> bucket = buckets.get(frequency);
+
+                bucket.remove(key);
+
+                if (bucket.isEmpty()) {
+                    buckets.remove(frequency);
+
+                    if (minFrequency == frequency) {
+                        minFrequency = frequency + 1;
+                    }
+                }
+
+                frequencies.put(key, frequency + 1);
+                buckets.computeIfAbsent(frequency + 1, k -> new LinkedHashSet<>()).add(key);
+            }
+
+            return value;
+        }
+
+        @Override
+        public synchronized void put(final Object key, final Object value) {
+            if (entries.put(key, value) == null) {
+                if (entries.size() > maxSize) {
+                    evict();
+                }
+
+                minFrequency = 1;
+                frequencies.put(key, minFrequency);
+                buckets.computeIfAbsent(minFrequency, k -> new LinkedHashSet<>()).add(key);
+            }
+        }
+
+        private void evict() {
+            final Set<Object> bucket = buckets.get(minFrequency);
+            final Iterator<Object> iterator = bucket.iterator();
+            final Object key = iterator.next();
+
+            iterator.remove();
+
+            if (bucket.isEmpty()) {
+                buckets.remove(minFrequency);
+            }
+
+            entries.remove(key);
+            frequencies.remove(key);
+            evictions.increment();
+        }
+
+        @Override
+        public synchronized int size() {
+            return entries.size();
+        }
+
+    }
+
+}
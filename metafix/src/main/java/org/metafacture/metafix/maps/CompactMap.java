@@ -0,0 +1,399 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.MorphExecutionException;
+import org.metafacture.metamorph.api.helpers.AbstractReadOnlyMap;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable in-heap lookup map that stores its keys in front-coded sorted
+ * blocks of UTF-8 bytes: within each block of {@value #BLOCK_SIZE} keys, only
+ * the first key is stored in full, the following ones only store the suffix
+ * that differs from their predecessor. Equal values are stored only once.
+ * This takes a fraction of the memory of a {@link HashMap} for keys with long
+ * common prefixes (e.g. URIs or prefixed identifiers).
+ *
+ * A lookup binary searches the first keys of the blocks and then scans a
+ * single block. The {@link #keySet() keys} are decoded on demand, in the order
+ * of their UTF-8 bytes.
+ */
+public final class CompactMap extends AbstractReadOnlyMap<String, String> {
+
+    public static final int BLOCK_SIZE = 16;
+
+    private final byte[] keys;
+    private final byte[] values;
+    private final int[] blockOffsets;
+    private final int[] valueIndexes;
+    private final int[] valueOffsets;
+    private final int maxKeyLength;
+
+    private CompactMap(final byte[] keys, final int[] blockOffsets, final int maxKeyLength,
+            final byte[] values, final int[] valueOffsets, final int[] valueIndexes) {
+        this.keys = keys;
+        this.blockOffsets = blockOffsets;
+        this.maxKeyLength = maxKeyLength;
+        this.values = values;
+        this.valueOffsets = valueOffsets;
+        this.valueIndexes = valueIndexes;
+    }
+
+    /**
+     * Creates a compact copy of the given map. Only requires the map to
+     * support {@link Map#keySet() keySet} and {@link Map#get(Object) get}
+     * (like read-only file maps do).
+     *
+     * @param map the map
+     * @return the compact map
+     * @throws UnsupportedOperationException if the map's keys can't be listed
+     */
+    public static CompactMap of(final Map<String, String> map) {
+        // bypass the cache, which would only be filled with all the entries
+        final Map<String, String> source = map instanceof CachedMap ? ((CachedMap) map).getMap() : map;
+
+        final Set<String> keySet = source.keySet();
+        final List<byte[]> keyList = new ArrayList<>(keySet.size());
+        final List<String> valueList = new ArrayList<>(keySet.size());
+
+        for (final String key : keySet) {
+            final String value = key != null ? source.get(key) : null;
+
+            if (value != null) {
+                keyList.add(key.getBytes(StandardCharsets.UTF_8));
+                valueList.add(value);
+            }
+        }
+
+        return build(keyList, valueList);
+    }
+
+    /**
+     * Loads the given separated-values file. The file is interpreted like
+     * {@link org.metafacture.metamorph.maps.FileMap}: the first column is the
+     * key and the second column is the value; empty lines and lines with a
+     * different number of columns are skipped; later keys override earlier
+     * ones.
+     *
+     * @param file the file
+     * @param separator the column separator
+     * @return the compact map
+     */
+    public static CompactMap load(final String file, final String separator) {
+        final Pattern split = Pattern.compile(separator, Pattern.LITERAL);
+        final List<byte[]> keyList = new ArrayList<>();
+        final List<String> valueList = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = split.split(line);
+
+                if (parts.length == 2) {
+                    keyList.add(parts[0].getBytes(StandardCharsets.UTF_8));
+                    valueList.add(parts[1]);
+                }
+            }
+        }
+        catch (final IOException e) {
+            throw new MorphExecutionException("filemap: cannot read map file " + file, e);
+        }
+
+        return build(keyList, valueList);
+    }
+
+    // keeps the last value of repeated keys
+    private static CompactMap build(final List<byte[]> keyList, final List<String> valueList) {
+        final Integer[] order = new Integer[keyList.size()];
+        Arrays.setAll(order, Integer::valueOf);
+
+        // stable, so that repeated keys remain in input order
+        Arrays.sort(order, (a, b) -> compare(keyList.get(a), keyList.get(b)));
+
+        int count = 0;
+
+        for (int i = 0; i < order.length; ++i) {
+            if (i + 1 == order.length || compare(keyList.get(order[i]), keyList.get(order[i + 1])) != 0) {
+                order[count] = order[i];
+                ++count;
+            }
+        }
+
+        final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+        final Map<String, Integer> distinctValues = new HashMap<>();
+
+        final int[] blockOffsets = new int[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        final int[] valueIndexes = new int[count];
+        final int[] valueOffsets = new int[count + 1];
+        int maxKeyLength = 0;
+
+        for (int i = 0; i < count; ++i) {
+            final byte[] key = keyList.get(order[i]);
+            final int prefix;
+
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = keyBytes.size();
+                prefix = 0;
+            }
+            else {
+                prefix = commonPrefix(keyList.get(order[i - 1]), key);
+            }
+
+            writeVarInt(keyBytes, prefix);
+            writeVarInt(keyBytes, key.length - prefix);
+            keyBytes.write(key, prefix, key.length - prefix);
+
+            maxKeyLength = Math.max(maxKeyLength, key.length);
+
+            valueIndexes[i] = distinctValues.computeIfAbsent(valueList.get(order[i]), v -> {
+                final int index = distinctValues.size();
+                final byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+
+                valueBytes.write(bytes, 0, bytes.length);
+                valueOffsets[index + 1] = valueBytes.size();
+
+                return index;
+            });
+        }
+
+        return new CompactMap(keyBytes.toByteArray(), blockOffsets, maxKeyLength,
+                valueBytes.toByteArray(), Arrays.copyOf(valueOffsets, distinctValues.size() + 1), valueIndexes);
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return the number of keys
+     */
+    public int getCount() {
+        return valueIndexes.length;
+    }
+
+    /**
+     * Returns the approximate number of bytes occupied by the map's contents.
+     *
+     * @return the number of bytes
+     */
+    public long getByteSize() {
+        return keys.length + values.length + (long) Integer.BYTES *
+            (blockOffsets.length + valueIndexes.length + valueOffsets.length);
+    }
+
+    @Override
+    public String get(final Object key) {
+        if (!(key instanceof String) || blockOffsets.length == 0) {
+            return null;
+        }
+
+        final byte[] target = ((String) key).getBytes(StandardCharsets.UTF_8);
+        if (target.length > maxKeyLength) {
+            return null;
+        }
+
+        final int block = findBlock(target);
+        if (block < 0) {
+            return null;
+        }
+
+        final int[] position = {blockOffsets[block]};
+        final int end = Math.min((block + 1) * BLOCK_SIZE, valueIndexes.length);
+
+        // length of the common prefix of the target and the previous key (which is smaller)
+        int matched = 0;
+
+        for (int i = block * BLOCK_SIZE; i < end; ++i) {
+            final int prefix = readVarInt(position);
+            final int suffix = readVarInt(position);
+            final int offset = position[0];
+
+            position[0] += suffix;
+
+            if (prefix > matched) {
+                // same as the previous key up to the first mismatch, thus smaller as well
+                continue;
+            }
+            else if (prefix < matched) {
+                // greater than the previous key at a position where that matched the target
+                break;
+            }
+
+            final int length = prefix + suffix;
+            final int common = Math.min(length, target.length);
+
+            while (matched < common && keys[offset + matched - prefix] == target[matched]) {
+                ++matched;
+            }
+
+            if (matched == common) {
+                if (length == target.length) {
+                    return value(valueIndexes[i]);
+                }
+                else if (length > target.length) {
+                    break;
+                }
+            }
+            else if ((keys[offset + matched - prefix] & 0xff) > (target[matched] & 0xff)) {
+                break;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        final Set<String> result = new LinkedHashSet<>(valueIndexes.length);
+        final byte[] current = new byte[maxKeyLength];
+        final int[] position = {0};
+
+        for (int i = 0; i < valueIndexes.length; ++i) {
+            final int prefix = readVarInt(position);
+            final int suffix = readVarInt(position);
+
+            System.arraycopy(keys, position[0], current, prefix, suffix);
+            position[0] += suffix;
+
+            result.add(new String(current, 0, prefix + suffix, StandardCharsets.UTF_8));
+        }
+
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public String getOrDefault(final Object key, final String defaultValue) {
+        final String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private String value(final int index) {
+        final int offset = valueOffsets[index];
+        return new String(values, offset, valueOffsets[index + 1] - offset, StandardCharsets.UTF_8);
+    }
+
+    // returns the last block whose first key is not greater than the target
+    private int findBlock(final byte[] target) {
+        int low = 0;
+        int high = blockOffsets.length - 1;
+
+        // all keys between the bounds share the shorter of their common prefixes with the target
+        int lowMatched = 0;
+        int highMatched = 0;
+
+        while (low <= high) {
+            final int middle = low + high >>> 1;
+            final int[] position = {blockOffsets[middle]};
+
+            readVarInt(position); // prefix (always 0)
+            final int length = readVarInt(position);
+            final int offset = position[0];
+
+            final int common = Math.min(length, target.length);
+            int matched = Math.min(lowMatched, highMatched);
+
+            while (matched < common && keys[offset + matched] == target[matched]) {
+                ++matched;
+            }
+
+            final int comparison = matched < common ?
+                Integer.compare(keys[offset + matched] & 0xff, target[matched] & 0xff) :
+                Integer.compare(length, target.length);
+
+            if (comparison < 0) {
+                low = middle + 1;
+                lowMatched = matched;
+            }
+            else if (comparison > 0) {
+                high = middle - 1;
+                highMatched = matched;
+            }
+            else {
+                return middle;
+            }
+        }
+
+        return high;
+    }
+
+    private int readVarInt(final int[] position) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = keys[position[0]++];
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        while (b < 0);
+
+        return result;
+    }
+
+    private static void writeVarInt(final ByteArrayOutputStream out, final int value) {
+        int remaining = value;
+
+        while ((remaining & ~0x7f) != 0) {
+            out.write(remaining & 0x7f | 0x80);
+            remaining >>>= 7;
+        }
+
+        out.write(remaining);
+    }
+
+    private static int commonPrefix(final byte[] a, final byte[] b) {
+        final int length = Math.min(a.length, b.length);
+
+        for (int i = 0; i < length; ++i) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+
+        return length;
+    }
+
+    // unsigned, i.e. in the order of the encoded code points
+    private static int compare(final byte[] a, final byte[] b) {
+        final int common = Math.min(a.length, b.length);
+
+        for (int i = 0; i < common; ++i) {
+            final int comparison = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        return Integer.compare(a.length, b.length);
+    }
+
+}
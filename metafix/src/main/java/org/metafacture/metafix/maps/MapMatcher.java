@@ -0,0 +1,310 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.Maps;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Looks up the value for a string whose key is not (necessarily) identical to
+ * the string, but a prefix of it or a regular expression matching it. The keys
+ * of a map are indexed once per {@link Mode} in a trie (prefixes) or a single
+ * combined pattern (regular expressions), so that each string is resolved in
+ * a single pass. The default key ({@value Maps#DEFAULT_MAP_KEY}) is not
+ * indexed.
+ *
+ * Matchers are cached per map instance (by identity) and discarded along with
+ * the map. Maps that are modified must be {@link #invalidate(Map) invalidated}.
+ */
+public abstract class MapMatcher {
+
+    private static final LoadingCache<Map<String, String>, Map<Mode, MapMatcher>> CACHE = CacheBuilder.newBuilder()
+        .weakKeys()
+        .build(CacheLoader.from(k -> new EnumMap<>(Mode.class)));
+
+    private MapMatcher() {
+    }
+
+    /**
+     * Returns the (cached) matcher for the given map and mode.
+     *
+     * @param map the map; must support {@link Map#keySet()} unless the mode
+     *            is {@link Mode#EXACT}
+     * @param mode the match mode
+     * @return the matcher
+     */
+    public static MapMatcher of(final Map<String, String> map, final Mode mode) {
+        if (mode == Mode.EXACT) {
+            return new ExactMatcher(map);
+        }
+
+        final Map<Mode, MapMatcher> matchers = CACHE.getUnchecked(map);
+
+        synchronized (matchers) {
+            return matchers.computeIfAbsent(mode, m -> m == Mode.REGEX ? new RegexMatcher(map) : new PrefixMatcher(map, m == Mode.LONGEST_PREFIX));
+        }
+    }
+
+    /**
+     * Discards the matchers for the given map, e.g. after it has been modified.
+     *
+     * @param map the map
+     */
+    public static void invalidate(final Map<String, String> map) {
+        CACHE.invalidate(map);
+    }
+
+    /**
+     * Returns the value of the (first) key that matches the given string.
+     *
+     * @param string the string
+     * @return the value, or null if no key matches
+     */
+    public abstract String get(String string);
+
+    /**
+     * Match modes.
+     */
+    public enum Mode {
+
+        /**
+         * Matches the identical key.
+         */
+        EXACT,
+
+        /**
+         * Matches the shortest key that the string starts with.
+         */
+        PREFIX,
+
+        /**
+         * Matches the longest key that the string starts with.
+         */
+        LONGEST_PREFIX,
+
+        /**
+         * Matches the first key (in map order) that, as a regular expression,
+         * matches the whole string.
+         */
+        REGEX;
+
+        /**
+         * Returns the mode for the given (case-insensitive) name.
+         *
+         * @param name the mode name, or null for {@link #EXACT}
+         * @return the mode
+         */
+        public static Mode of(final String name) {
+            return name != null ? valueOf(name.toUpperCase(Locale.ROOT)) : EXACT;
+        }
+
+    }
+
+    private static final class ExactMatcher extends MapMatcher {
+
+        private final Map<String, String> map;
+
+        private ExactMatcher(final Map<String, String> map) {
+            this.map = map;
+        }
+
+        @Override
+        public String get(final String string) {
+            return map.get(string);
+        }
+
+    }
+
+    private static final class PrefixMatcher extends MapMatcher {
+
+        private final Node root;
+        private final boolean longest;
+
+        private PrefixMatcher(final Map<String, String> map, final boolean longest) {
+            final List<String> keys = new ArrayList<>(map.keySet());
+
+            keys.remove(Maps.DEFAULT_MAP_KEY);
+            keys.sort(null);
+
+            this.longest = longest;
+
+            root = new Node(map, keys, 0, keys.size(), 0);
+        }
+
+        @Override
+        public String get(final String string) {
+            String result = null;
+            Node node = root;
+
+            for (int i = 0; ; ++i) {
+                if (node.value != null) {
+                    result = node.value;
+
+                    if (!longest) {
+                        break;
+                    }
+                }
+
+                if (i == string.length()) {
+                    break;
+                }
+
+                final int index = Arrays.binarySearch(node.labels, string.charAt(i));
+                if (index < 0) {
+                    break;
+                }
+
+                node = node.children[index];
+            }
+
+            return result;
+        }
+
+    }
+
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final Node[] children;
+        private final String value;
+        private final char[] labels;
+
+        // builds the subtrie for the given range of sorted keys, which share the first `depth` characters
+        private Node(final Map<String, String> map, final List<String> keys, final int start, final int end, final int depth) {
+            int from = start;
+
+            if (from < end && keys.get(from).length() == depth) {
+                value = map.get(keys.get(from));
+                ++from;
+            }
+            else {
+                value = null;
+            }
+
+            final StringBuilder labelBuilder = new StringBuilder();
+            final List<Node> childList = new ArrayList<>();
+
+            while (from < end) {
+                final char label = keys.get(from).charAt(depth);
+                int to = from + 1;
+
+                while (to < end && keys.get(to).charAt(depth) == label) {
+                    ++to;
+                }
+
+                labelBuilder.append(label);
+                childList.add(new Node(map, keys, from, to, depth + 1));
+
+                from = to;
+            }
+
+            labels = labelBuilder.toString().toCharArray();
+            children = childList.isEmpty() ? NO_CHILDREN : childList.toArray(NO_CHILDREN);
+        }
+
+    }
+
+    private static final class RegexMatcher extends MapMatcher {
+
+        private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+        private final List<Pattern> patterns = new ArrayList<>();
+        private final List<String> values = new ArrayList<>();
+        private final Pattern combined;
+        private final int[] groups;
+
+        private RegexMatcher(final Map<String, String> map) {
+            final StringBuilder builder = new StringBuilder();
+
+            map.keySet().forEach(k -> {
+                if (!Maps.DEFAULT_MAP_KEY.equals(k)) {
+                    if (builder.length() > 0) {
+                        builder.append('|');
+                    }
+
+                    final Pattern pattern = Pattern.compile(k);
+
+                    patterns.add(pattern);
+                    values.add(map.get(k));
+
+                    builder.append('(').append(k).append(')');
+                }
+            });
+
+            // each key becomes a capturing group, followed by its own groups
+            groups = new int[patterns.size()];
+
+            int group = 1;
+            for (int i = 0; i < groups.length; ++i) {
+                groups[i] = group;
+                group += patterns.get(i).matcher("").groupCount() + 1;
+            }
+
+            combined = compile(builder.toString());
+        }
+
+        // keys that can't be combined (e.g. duplicate group names, back references) are matched one by one
+        private Pattern compile(final String regex) {
+            try {
+                // group numbers are shifted in the combined pattern
+                return BACK_REFERENCE.matcher(regex).find() ? null : Pattern.compile(regex);
+            }
+            catch (final PatternSyntaxException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String get(final String string) {
+            if (combined != null) {
+                final Matcher matcher = combined.matcher(string);
+
+                if (matcher.matches()) {
+                    for (int i = 0; i < groups.length; ++i) {
+                        if (matcher.start(groups[i]) >= 0) {
+                            return values.get(i);
+                        }
+                    }
+                }
+            }
+            else {
+                for (int i = 0; i < patterns.size(); ++i) {
+                    if (patterns.get(i).matcher(string).matches()) {
+                        return values.get(i);
+                    }
+                }
+            }
+
+            return null;
+        }
+    }
+
+}
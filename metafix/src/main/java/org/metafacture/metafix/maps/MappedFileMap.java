@@ -0,0 +1,190 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.MorphExecutionException;
+import org.metafacture.metamorph.api.helpers.AbstractReadOnlyMap;
+
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A read-only lookup map backed by a memory-mapped index file, which is built
+ * once from a separated-values file and then shared across runs (and JVMs).
+ * The source file is interpreted like {@link org.metafacture.metamorph.maps.FileMap}:
+ * the first column is the key and the second column is the value; empty lines
+ * and lines with a different number of columns are skipped; later keys
+ * override earlier ones.
+ *
+ * Lookups read directly from the mapped file, so the map's contents don't
+ * occupy any heap; only the requested values are copied. The {@link #keySet()
+ * keys} can be listed (e.g. for prefix or regex lookups), but are decoded into
+ * the heap for that.
+ *
+ * Index files are kept in the directory given by the system property
+ * {@value #INDEX_DIR_PROPERTY} (default: {@code metafix-maps} in the temporary
+ * directory). They are keyed by the source file's path, size and modification
+ * time and the separator, so a changed source file is indexed again.
+ *
+ * Index layout (big-endian):
+ * <ul>
+ * <li>header: magic number, version, entry count, table size (each an int)</li>
+ * <li>open addressing hash table: one long per slot, holding the entry's
+ * offset in the file (or 0 for an empty slot)</li>
+ * <li>entries: key length (int), key (UTF-8), value length (int), value
+ * (UTF-8)</li>
+ * </ul>
+ */
+public final class MappedFileMap extends AbstractReadOnlyMap<String, String> {
+
+    public static final String INDEX_DIR_PROPERTY = "org.metafacture.metafix.mapIndexDir";
+
+    public static final String INDEX_EXTENSION = ".idx";
+
+    /*package-private*/ static final int MAGIC = 0x4d46494d; // "MFIM"
+    /*package-private*/ static final int VERSION = 1;
+
+    /*package-private*/ static final int HEADER_SIZE = 4 * Integer.BYTES;
+    /*package-private*/ static final int COUNT_POSITION = 2 * Integer.BYTES;
+    /*package-private*/ static final int TABLE_SIZE_POSITION = 3 * Integer.BYTES;
+
+    private final MappedSegments segments;
+    private final int count;
+    private final int tableMask;
+
+    private MappedFileMap(final Path index) throws IOException {
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            segments = new MappedSegments(channel, FileChannel.MapMode.READ_ONLY);
+        }
+
+        if (segments.getInt(0) != MAGIC || segments.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Invalid map index: " + index);
+        }
+
+        count = segments.getInt(COUNT_POSITION);
+        tableMask = segments.getInt(TABLE_SIZE_POSITION) - 1;
+    }
+
+    /**
+     * Opens the map for the given source file, building its index if
+     * necessary.
+     *
+     * @param file the source file
+     * @param separator the column separator
+     * @return the map
+     */
+    public static MappedFileMap open(final String file, final String separator) {
+        try {
+            final Path source = Paths.get(file).toRealPath();
+            final Path index = getIndexDir().resolve(Hashing.sha256().newHasher()
+                    .putInt(VERSION)
+                    .putString(source.toString(), StandardCharsets.UTF_8)
+                    .putString(separator, StandardCharsets.UTF_8)
+                    .putLong(Files.size(source))
+                    .putLong(Files.getLastModifiedTime(source).toMillis())
+                    .hash() + INDEX_EXTENSION);
+
+            if (!Files.isRegularFile(index)) {
+                MappedFileMapBuilder.build(source, separator, index);
+            }
+
+            return new MappedFileMap(index);
+        }
+        catch (final IOException e) {
+            throw new MorphExecutionException("filemap: cannot index map file " + file, e);
+        }
+    }
+
+    private static Path getIndexDir() {
+        final String indexDir = System.getProperty(INDEX_DIR_PROPERTY);
+        return indexDir != null && !indexDir.isEmpty() ? Paths.get(indexDir) :
+            Paths.get(System.getProperty("java.io.tmpdir"), "metafix-maps");
+    }
+
+    /**
+     * Returns the number of distinct keys.
+     *
+     * @return the number of keys
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String get(final Object key) {
+        return key instanceof String ? find((String) key) : null;
+    }
+
+    @Override
+    public String getOrDefault(final Object key, final String defaultValue) {
+        final String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Returns the keys, decoded from the index on each call (in the order of
+     * the hash table).
+     *
+     * @return the keys
+     */
+    @Override
+    public Set<String> keySet() {
+        final Set<String> result = new LinkedHashSet<>(count * 2);
+
+        for (int slot = 0; slot <= tableMask; ++slot) {
+            final long position = segments.getLong(slotPosition(slot));
+
+            if (position != 0) {
+                result.add(new String(segments.getBytes(position + Integer.BYTES, segments.getInt(position)), StandardCharsets.UTF_8));
+            }
+        }
+
+        return Collections.unmodifiableSet(result);
+    }
+
+    private String find(final String key) {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = MappedSegments.hash(bytes) & tableMask;
+
+        long position;
+        while ((position = segments.getLong(slotPosition(slot))) != 0) {
+            if (segments.getInt(position) == bytes.length && segments.equals(position + Integer.BYTES, bytes)) {
+                final long valuePosition = position + Integer.BYTES + bytes.length;
+                return new String(segments.getBytes(valuePosition + Integer.BYTES, segments.getInt(valuePosition)), StandardCharsets.UTF_8);
+            }
+
+            slot = slot + 1 & tableMask;
+        }
+
+        return null;
+    }
+
+    /*package-private*/ static long slotPosition(final int slot) {
+        return HEADER_SIZE + (long) slot * Long.BYTES;
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the index file of a {@link MappedFileMap}. The entries are first
+ * written to a temporary data file, which is then appended to the (empty)
+ * hash table and indexed in place, so that building doesn't require any heap
+ * proportional to the map size either.
+ */
+/*package-private*/ final class MappedFileMapBuilder {
+
+    // the table size (at most twice the number of entries) must fit an int
+    private static final int MAX_ENTRIES = Integer.highestOneBit(Integer.MAX_VALUE) / 2;
+
+    private MappedFileMapBuilder() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /*package-private*/ static void build(final Path source, final String separator, final Path index) throws IOException {
+        final Path indexDir = Files.createDirectories(index.getParent());
+        final Path data = Files.createTempFile(indexDir, index.getFileName().toString(), null);
+        final Path temp = Files.createTempFile(indexDir, index.getFileName().toString(), null);
+
+        try {
+            final int entries = writeEntries(source, separator, data);
+
+            if (entries > MAX_ENTRIES) {
+                throw new IOException("Too many entries: " + entries);
+            }
+
+            final int tableSize = Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1;
+            final long dataStart = MappedFileMap.slotPosition(tableSize);
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    FileChannel dataChannel = FileChannel.open(data, StandardOpenOption.READ)) {
+                final long dataEnd = dataStart + dataChannel.size();
+
+                // extend the file to its final size (with a zeroed hash table) before filling it in
+                channel.write(ByteBuffer.allocate(1), Math.max(dataStart, dataEnd) - 1);
+
+                for (long position = dataStart; position < dataEnd; ) {
+                    position += channel.transferFrom(dataChannel, position, dataEnd - position);
+                }
+
+                final MappedSegments segments = new MappedSegments(channel, FileChannel.MapMode.READ_WRITE);
+
+                segments.putInt(0, MappedFileMap.MAGIC);
+                segments.putInt(Integer.BYTES, MappedFileMap.VERSION);
+                segments.putInt(MappedFileMap.TABLE_SIZE_POSITION, tableSize);
+                segments.putInt(MappedFileMap.COUNT_POSITION, insertEntries(segments, dataStart, dataEnd, tableSize - 1));
+
+                segments.force();
+            }
+
+            // concurrent builders produce identical indexes, so the last one wins
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(data);
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int writeEntries(final Path source, final String separator, final Path data) throws IOException {
+        final Pattern split = Pattern.compile(separator, Pattern.LITERAL);
+        int entries = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(source), StandardCharsets.UTF_8));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(data)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = split.split(line);
+
+                if (parts.length == 2) {
+                    writeString(out, parts[0]);
+                    writeString(out, parts[1]);
+                    ++entries;
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    private static void writeString(final DataOutputStream out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int insertEntries(final MappedSegments segments, final long start, final long end, final int tableMask) {
+        int count = 0;
+
+        for (long position = start; position < end; ) {
+            final int keyLength = segments.getInt(position);
+            final long keyPosition = position + Integer.BYTES;
+
+            int slot = segments.hash(keyPosition, keyLength) & tableMask;
+            long existing;
+
+            while ((existing = segments.getLong(MappedFileMap.slotPosition(slot))) != 0 && !isKey(segments, existing, keyPosition, keyLength)) {
+                slot = slot + 1 & tableMask;
+            }
+
+            if (existing == 0) {
+                ++count;
+            }
+
+            // later entries override earlier ones with the same key
+            segments.putLong(MappedFileMap.slotPosition(slot), position);
+
+            final long valuePosition = keyPosition + keyLength;
+            position = valuePosition + Integer.BYTES + segments.getInt(valuePosition);
+        }
+
+        return count;
+    }
+
+    private static boolean isKey(final MappedSegments segments, final long position, final long keyPosition, final int keyLength) {
+        return segments.getInt(position) == keyLength && segments.equals(position + Integer.BYTES, keyPosition, keyLength);
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file region mapped into memory in segments, since a single mapped buffer
+ * is limited to 2 GB. All accesses are absolute, so concurrent reads are safe.
+ * Values are stored in big-endian byte order and may span segment boundaries.
+ */
+/*package-private*/ final class MappedSegments {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = (int) SEGMENT_SIZE - 1;
+
+    private static final int BYTE_MASK = 0xff;
+    private static final int BYTE_BITS = 8;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final MappedByteBuffer[] segments;
+
+    /*package-private*/ MappedSegments(final FileChannel channel, final FileChannel.MapMode mode) throws IOException {
+        final long size = channel.size();
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+
+        for (int i = 0; i < segments.length; ++i) {
+            final long start = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(mode, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+    }
+
+    /*package-private*/ byte getByte(final long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) position & SEGMENT_MASK);
+    }
+
+    /*package-private*/ int getInt(final long position) {
+        final int offset = (int) position & SEGMENT_MASK;
+        final int value;
+
+        if (offset <= SEGMENT_MASK - Integer.BYTES) {
+            value = segments[(int) (position >>> SEGMENT_SHIFT)].getInt(offset);
+        }
+        else {
+            int result = 0;
+
+            for (int i = 0; i < Integer.BYTES; ++i) {
+                result = result << BYTE_BITS | getByte(position + i) & BYTE_MASK;
+            }
+
+            value = result;
+        }
+
+        return value;
+    }
+
+    // Only used for aligned positions, which never span segment boundaries.
+    /*package-private*/ long getLong(final long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) position & SEGMENT_MASK);
+    }
+
+    /*package-private*/ void putInt(final long position, final int value) {
+        segments[(int) (position >>> SEGMENT_SHIFT)].putInt((int) position & SEGMENT_MASK, value);
+    }
+
+    /*package-private*/ void putLong(final long position, final long value) {
+        segments[(int) (position >>> SEGMENT_SHIFT)].putLong((int) position & SEGMENT_MASK, value);
+    }
+
+    /*package-private*/ byte[] getBytes(final long position, final int length) {
+        final byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = getByte(position + i);
+        }
+
+        return bytes;
+    }
+
+    /*package-private*/ boolean equals(final long position, final byte[] bytes) {
+        boolean result = true;
+
+        for (int i = 0; i < bytes.length && result; ++i) {
+            result = getByte(position + i) == bytes[i];
+        }
+
+        return result;
+    }
+
+    /*package-private*/ boolean equals(final long position1, final long position2, final int length) {
+        boolean result = true;
+
+        for (int i = 0; i < length && result; ++i) {
+            result = getByte(position1 + i) == getByte(position2 + i);
+        }
+
+        return result;
+    }
+
+    /*package-private*/ int hash(final long position, final int length) {
+        long hash = FNV_OFFSET_BASIS;
+
+        for (int i = 0; i < length; ++i) {
+            hash = (hash ^ getByte(position + i) & BYTE_MASK) * FNV_PRIME;
+        }
+
+        return fold(hash);
+    }
+
+    /*package-private*/ static int hash(final byte[] bytes) {
+        long hash = FNV_OFFSET_BASIS;
+
+        for (final byte b : bytes) {
+            hash = (hash ^ b & BYTE_MASK) * FNV_PRIME;
+        }
+
+        return fold(hash);
+    }
+
+    private static int fold(final long hash) {
+        return (int) (hash ^ hash >>> Integer.SIZE);
+    }
+
+    /*package-private*/ void force() {
+        for (final MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+}
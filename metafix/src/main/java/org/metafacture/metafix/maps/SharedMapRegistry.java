@@ -0,0 +1,271 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.helpers.AbstractReadOnlyMap;
+import org.metafacture.metamorph.maps.FileMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A JVM-wide registry of read-only file maps, so that all Metafix instances
+ * (e.g. the workers of {@link org.metafacture.metafix.ParallelMetafix}) which
+ * use the same file share a single copy of its contents.
+ *
+ * Maps are keyed by the file's canonical path, size and modification time, the
+ * separator and the {@link Backend}; a changed file is thus loaded again. Each
+ * {@link #acquire(String, String, Backend) acquired} map counts as a reference, which is released when the map is
+ * {@link SharedMap#close() closed}. Once the last reference is released, the
+ * contents are dropped from the registry.
+ *
+ * Lookups go directly to the loaded map and don't require any locking.
+ */
+public final class SharedMapRegistry {
+
+    private static final ConcurrentMap<Key, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private SharedMapRegistry() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Acquires a reference to the map for the given file, loading it if
+     * necessary. Files that can't be resolved in the file system (e.g.
+     * classpath resources) are loaded without being shared.
+     *
+     * @param file the file
+     * @param separator the column separator
+     * @param backend the map implementation
+     * @return the map
+     */
+    public static SharedMap acquire(final String file, final String separator, final Backend backend) {
+        final Key key;
+
+        try {
+            final Path path = Paths.get(file).toRealPath();
+            key = new Key(path.toString(), separator, backend, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        }
+        catch (final IOException | InvalidPathException e) {
+            return new SharedMap(null, null, load(file, separator, backend));
+        }
+
+        final Entry entry = ENTRIES.compute(key, (k, v) -> {
+            final Entry result = v != null ? v : new Entry();
+            ++result.references;
+            return result;
+        });
+
+        try {
+            return new SharedMap(key, entry, entry.load(file, separator, backend));
+        }
+        catch (final RuntimeException e) { // checkstyle-disable-line IllegalCatch
+            release(key, entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of maps currently held by the registry.
+     *
+     * @return the number of maps
+     */
+    public static int size() {
+        return ENTRIES.size();
+    }
+
+    private static Map<String, String> load(final String file, final String separator, final Backend backend) {
+        switch (backend) {
+            case INDEX:
+                return MappedFileMap.open(file, separator);
+            case COMPACT:
+                return CompactMap.load(file, separator);
+            default:
+                return fileMap(file, separator);
+        }
+    }
+
+    private static Map<String, String> fileMap(final String file, final String separator) {
+        final FileMap map = new FileMap();
+
+        map.setSeparator(separator);
+        map.setFile(file);
+
+        return map;
+    }
+
+    private static void release(final Key key, final Entry entry) {
+        ENTRIES.computeIfPresent(key, (k, v) -> v != entry || --v.references > 0 ? v : null);
+    }
+
+    /**
+     * The implementations a file map can be loaded into.
+     */
+    public enum Backend {
+
+        /**
+         * A {@link FileMap} (hash map).
+         */
+        HASH,
+
+        /**
+         * A {@link MappedFileMap} (memory-mapped index).
+         */
+        INDEX,
+
+        /**
+         * A {@link CompactMap} (front-coded sorted keys).
+         */
+        COMPACT
+
+    }
+
+    /**
+     * A reference to a shared map.
+     */
+    public static final class SharedMap extends AbstractReadOnlyMap<String, String> implements Closeable {
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final Entry entry;
+        private final Key key;
+        private final Map<String, String> map;
+
+        private SharedMap(final Key key, final Entry entry, final Map<String, String> map) {
+            this.key = key;
+            this.entry = entry;
+            this.map = map;
+        }
+
+        /**
+         * Checks whether this map's contents are shared with other Metafix
+         * instances.
+         *
+         * @return true if the contents are held by the registry
+         */
+        public boolean isShared() {
+            return entry != null;
+        }
+
+        /**
+         * Returns the number of references to this map's contents.
+         *
+         * @return the reference count
+         */
+        public int getReferences() {
+            final Entry current = key != null ? ENTRIES.get(key) : null;
+            return current == entry && current != null ? current.references : 0;
+        }
+
+        @Override
+        public String get(final Object key) {
+            return map.get(key);
+        }
+
+        @Override
+        public String getOrDefault(final Object key, final String defaultValue) {
+            return map.getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return map.keySet();
+        }
+
+        /**
+         * Releases this reference. Subsequent calls have no effect.
+         */
+        @Override
+        public void close() {
+            if (entry != null && closed.compareAndSet(false, true)) {
+                release(key, entry);
+            }
+        }
+
+    }
+
+    private static final class Entry {
+
+        private volatile int references;
+        private volatile Map<String, String> map;
+
+        private Entry() {
+        }
+
+        private Map<String, String> load(final String file, final String separator, final Backend backend) {
+            Map<String, String> result = map;
+
+            if (result == null) {
+                synchronized (this) {
+                    result = map;
+
+                    if (result == null) {
+                        result = SharedMapRegistry.load(file, separator, backend);
+                        map = result;
+                    }
+                }
+            }
+
+            return result;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final String path;
+        private final String separator;
+        private final Backend backend;
+        private final long size;
+        private final long lastModified;
+
+        private Key(final String path, final String separator, final Backend backend, final long size, final long lastModified) {
+            this.path = path;
+            this.separator = separator;
+            this.backend = backend;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) obj;
+            return path.equals(other.path) && separator.equals(other.separator) &&
+                backend == other.backend && size == other.size && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, separator, backend, size, lastModified);
+        }
+
+    }
+
+}
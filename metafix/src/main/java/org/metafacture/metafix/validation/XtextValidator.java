@@ -2,6 +2,8 @@ package org.metafacture.metafix.validation;
 
 import org.metafacture.metafix.FixParseException;
 
+import com.google.common.io.CharStreams;
+import com.google.inject.Injector;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.xtext.ISetup;
 import org.eclipse.xtext.XtextStandaloneSetup;
@@ -13,14 +15,24 @@ import org.eclipse.xtext.validation.Issue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class XtextValidator {
 
     private static final Logger LOG = LoggerFactory.getLogger(XtextValidator.class);
 
+    // Creating the injector (and doing the EMF registration) is expensive; do it once per setup.
+    private static final Map<Class<? extends ISetup>, Injector> INJECTORS = new ConcurrentHashMap<>();
+
     private XtextValidator() {
         throw new IllegalAccessError("Utility class");
     }
@@ -32,8 +44,10 @@ public class XtextValidator {
         final int count = issues.size();
 
         if (count > 0) {
+            final URI uri = resource.getURI();
+
             LOG.warn("The {} file '{}' has {} issue{}:",
-                    resourceType(setup), resource.getURI().toFileString(), count, count > 1 ? "s" : "");
+                    resourceType(setup), uri.isFile() ? uri.toFileString() : uri, count, count > 1 ? "s" : "");
 
             issues.forEach(i -> LOG.warn("- {}: {} ({}:{})",
                         i.getSeverity(), i.getMessage(), i.getLineNumber(), i.getColumn()));
@@ -49,6 +63,30 @@ public class XtextValidator {
     }
 
     private static XtextResource getResource(final String path, final ISetup setup) {
+        return (XtextResource) newResourceSet(setup).getResource(getFileURI(path), true);
+    }
+
+    private static XtextResource getResource(final Reader reader, final String uri, final ISetup setup) {
+        final XtextResource resource = (XtextResource) newResourceSet(setup).createResource(URI.createURI(uri));
+
+        try {
+            final byte[] bytes = CharStreams.toString(reader).getBytes(StandardCharsets.UTF_8);
+            resource.load(new ByteArrayInputStream(bytes), Collections.singletonMap(XtextResource.OPTION_ENCODING, StandardCharsets.UTF_8.name()));
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return resource;
+    }
+
+    /**
+     * Returns the URI under which the resource at the given path is loaded.
+     *
+     * @param path the resource path
+     * @return the (canonical, if possible) file URI
+     */
+    public static URI getFileURI(final String path) {
         final File file = new File(path);
         String absolutePath;
 
@@ -59,18 +97,37 @@ public class XtextValidator {
             absolutePath = file.getAbsolutePath();
         }
 
-        return (XtextResource) setup.createInjectorAndDoEMFRegistration()
-            .getInstance(XtextResourceSet.class).getResource(URI.createFileURI(absolutePath), true);
+        return URI.createFileURI(absolutePath);
+    }
+
+    private static XtextResourceSet newResourceSet(final ISetup setup) {
+        return INJECTORS.computeIfAbsent(setup.getClass(), k -> setup.createInjectorAndDoEMFRegistration())
+            .getInstance(XtextResourceSet.class);
     }
 
     public static XtextResource getValidatedResource(final String path, final ISetup setup) {
-        final XtextResource resource = getResource(path, setup);
+        return validated(getResource(path, setup), path, setup);
+    }
+
+    /**
+     * Parses and validates the resource from the given reader, without
+     * writing it to a file.
+     *
+     * @param reader the reader providing the resource content
+     * @param uri the (virtual) URI of the resource; its extension determines the language
+     * @param setup the language setup
+     * @return the validated resource
+     */
+    public static XtextResource getValidatedResource(final Reader reader, final String uri, final ISetup setup) {
+        return validated(getResource(reader, uri, setup), uri, setup);
+    }
 
+    private static XtextResource validated(final XtextResource resource, final String name, final ISetup setup) {
         if (validate(resource, setup)) {
             return resource;
         }
         else {
-            throw new FixParseException("Invalid " + resourceType(setup) + " resource: " + path);
+            throw new FixParseException("Invalid " + resourceType(setup) + " resource: " + name);
         }
     }
 
@@ -17,6 +17,7 @@
 package org.metafacture.metafix;
 
 import nl.jqno.equalsverifier.EqualsVerifier;
+import nl.jqno.equalsverifier.Warning;
 import org.junit.jupiter.api.Test;
 
 public class ArrayValueTest {
@@ -28,6 +29,8 @@ public class ArrayValueTest {
     public void shouldSatisfyEqualsContract() {
         EqualsVerifier.forClass(Value.Array.class)
             .withPrefabValues(Value.class, Value.newArray(), Value.newHash())
+            .withIgnoredFields("share", "owner")
+            .suppress(Warning.NONFINAL_FIELDS)
             .verify();
     }
 
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the map backing {@link Value.Hash}.
+ */
+public class FieldMapTest {
+
+    private static final String FIELD = "field";
+
+    public FieldMapTest() {
+    }
+
+    @Test
+    public void shouldKeepInsertionOrder() {
+        final FieldMap map = new FieldMap();
+        map.put("c", new Value("1"));
+        map.put("a", new Value("2"));
+        map.put("b", new Value("3"));
+        map.put("a", new Value("4"));
+
+        Assertions.assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<>(map.keySet()));
+        Assertions.assertEquals("{c=1, a=4, b=3}", map.toString());
+        Assertions.assertFalse(map.isLarge());
+    }
+
+    @Test
+    public void shouldLookUpEqualKeys() {
+        final FieldMap map = new FieldMap();
+        map.put(new String(FIELD), new Value("1"));
+
+        Assertions.assertEquals(new Value("1"), map.get(FIELD));
+        Assertions.assertTrue(map.containsKey(FIELD));
+        Assertions.assertNull(map.get("other"));
+        Assertions.assertNull(map.get(null));
+    }
+
+    @Test
+    public void shouldUpgradeAboveThreshold() {
+        final FieldMap map = new FieldMap();
+        final List<String> keys = new ArrayList<>();
+
+        for (int i = 0; i <= FieldMap.DEFAULT_THRESHOLD; ++i) {
+            Assertions.assertFalse(map.isLarge());
+
+            keys.add(FIELD + i);
+            map.put(FIELD + i, new Value(i));
+        }
+
+        Assertions.assertTrue(map.isLarge());
+        Assertions.assertEquals(keys, new ArrayList<>(map.keySet()));
+
+        map.clear();
+
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertTrue(map.isLarge());
+    }
+
+    @Test
+    public void shouldRemoveViaViews() {
+        final FieldMap map = new FieldMap();
+        map.put("a", new Value("1"));
+        map.put("b", new Value(""));
+        map.put("c", new Value("3"));
+        map.put("d", new Value(""));
+
+        map.values().removeIf(v -> v.asString().isEmpty());
+        Assertions.assertEquals("{a=1, c=3}", map.toString());
+
+        map.keySet().retainAll(Arrays.asList("c", "x"));
+        Assertions.assertEquals("{c=3}", map.toString());
+    }
+
+    @Test
+    public void shouldFailOnModificationDuringIteration() {
+        final FieldMap map = new FieldMap();
+        map.put("a", new Value("1"));
+        map.put("b", new Value("2"));
+
+        Assertions.assertThrows(ConcurrentModificationException.class, () -> map.forEach((k, v) -> map.remove(k)));
+    }
+
+    @Test
+    public void shouldBehaveLikeLinkedHashMap() {
+        final Random random = new Random(42);
+
+        for (int run = 0; run < 100; ++run) {
+            final FieldMap actual = new FieldMap();
+            final Map<String, Value> expected = new LinkedHashMap<>();
+
+            for (int op = 0; op < 50; ++op) {
+                final String key = FIELD + random.nextInt(FieldMap.DEFAULT_THRESHOLD + 4);
+
+                switch (random.nextInt(4)) {
+                    case 0:
+                        Assertions.assertEquals(expected.remove(key), actual.remove(key));
+                        break;
+                    case 1:
+                        Assertions.assertEquals(expected.get(key), actual.get(key));
+                        break;
+                    default:
+                        final Value value = new Value(op);
+                        Assertions.assertEquals(expected.put(key, value), actual.put(key, value));
+                }
+
+                Assertions.assertEquals(expected, actual);
+                Assertions.assertEquals(actual, expected);
+                Assertions.assertEquals(expected.hashCode(), actual.hashCode());
+                Assertions.assertEquals(expected.toString(), actual.toString());
+            }
+        }
+    }
+
+}
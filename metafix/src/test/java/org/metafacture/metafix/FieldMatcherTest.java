@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests the field name matcher and its caches.
+ */
+public class FieldMatcherTest {
+
+    public FieldMatcherTest() {
+    }
+
+    @Test
+    public void shouldMatchLiteralPattern() {
+        final FieldMatcher matcher = FieldMatcher.of("field");
+
+        Assertions.assertFalse(matcher.isWildcard());
+        Assertions.assertTrue(matcher.matches("field"));
+        Assertions.assertFalse(matcher.matches("field2"));
+    }
+
+    @Test
+    public void shouldMatchStarWildcard() {
+        final FieldMatcher matcher = FieldMatcher.of("fi*");
+
+        Assertions.assertTrue(matcher.isWildcard());
+        Assertions.assertTrue(matcher.matches("field"));
+        Assertions.assertFalse(matcher.matches("afield"));
+    }
+
+    @Test
+    public void shouldMatchQuestionMarkWildcard() {
+        final FieldMatcher matcher = FieldMatcher.of("f?eld");
+
+        Assertions.assertTrue(matcher.matches("field"));
+        Assertions.assertTrue(matcher.matches("fxeld"));
+        Assertions.assertFalse(matcher.matches("fiield"));
+    }
+
+    @Test
+    public void shouldMatchCharacterClass() {
+        final FieldMatcher matcher = FieldMatcher.of("24[05]");
+
+        Assertions.assertTrue(matcher.matches("240"));
+        Assertions.assertTrue(matcher.matches("245"));
+        Assertions.assertFalse(matcher.matches("246"));
+    }
+
+    @Test
+    public void shouldReuseMatcherForSamePattern() {
+        Assertions.assertSame(FieldMatcher.of("a*"), FieldMatcher.of("a*"));
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        final FieldMatcher matcher = FieldMatcher.of("shouldCountHitsAndMisses*");
+        final FieldMatcher.Stats before = FieldMatcher.getStats();
+
+        matcher.matches("shouldCountHitsAndMisses1");
+        matcher.matches("shouldCountHitsAndMisses1");
+        matcher.matches("shouldCountHitsAndMisses1");
+        matcher.matches("other");
+
+        final FieldMatcher.Stats after = FieldMatcher.getStats();
+
+        Assertions.assertTrue(after.getHitCount() - before.getHitCount() >= 2);
+        Assertions.assertTrue(after.getMissCount() - before.getMissCount() >= 2);
+        Assertions.assertTrue(after.getPatternCount() >= 1);
+        Assertions.assertTrue(after.getFieldCount() >= 2);
+    }
+
+    @Test
+    public void shouldMatchConcurrently() throws InterruptedException, ExecutionException {
+        final int threads = 8;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+
+            for (int i = 0; i < threads * 100; ++i) {
+                final String field = (i % 2 == 0 ? "abc" : "xyz") + i;
+                futures.add(executorService.submit(() -> FieldMatcher.of("a?c*").matches(field) == field.startsWith("abc")));
+            }
+
+            for (final Future<Boolean> future : futures) {
+                Assertions.assertTrue(future.get());
+            }
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+}
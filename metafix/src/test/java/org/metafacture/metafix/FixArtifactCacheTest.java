@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.metafix.fix.Fix;
+import org.metafacture.metafix.validation.XtextValidator;
+
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.xtext.resource.XtextResource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Tests the on-disk cache of precompiled Fix artifacts.
+ */
+public class FixArtifactCacheTest {
+
+    private static final String FIX = "add_field('a', 'b')\nlookup('a', './test.csv')\n";
+
+    @TempDir
+    public Path tempDir; // checkstyle-disable-line VisibilityModifier
+
+    private Path cacheDir;
+
+    public FixArtifactCacheTest() {
+    }
+
+    @BeforeEach
+    public void setCacheDir() {
+        cacheDir = tempDir.resolve("cache");
+        System.setProperty(FixArtifactCache.CACHE_DIR_PROPERTY, cacheDir.toString());
+    }
+
+    @AfterEach
+    public void clearCacheDir() {
+        System.clearProperty(FixArtifactCache.CACHE_DIR_PROPERTY);
+    }
+
+    @Test
+    public void shouldLoadFixFromArtifact() throws IOException {
+        final String path = writeFix(FIX);
+
+        Assertions.assertTrue(FixStandaloneSetup.parseFix(path).eResource() instanceof XtextResource);
+        Assertions.assertEquals(1, countArtifacts());
+
+        final Fix fix = FixStandaloneSetup.parseFix(path);
+
+        Assertions.assertTrue(fix.eResource() instanceof BinaryResourceImpl);
+        Assertions.assertEquals(XtextValidator.getFileURI(path), fix.eResource().getURI());
+        Assertions.assertEquals(2, fix.getElements().size());
+    }
+
+    @Test
+    public void shouldLoadInlineFixFromArtifact() throws IOException {
+        FixStandaloneSetup.parseFix(new StringReader(FIX));
+
+        Assertions.assertTrue(FixStandaloneSetup.parseFix(new StringReader(FIX)).eResource() instanceof BinaryResourceImpl);
+        Assertions.assertEquals(1, countArtifacts());
+    }
+
+    @Test
+    public void shouldRebuildArtifactWhenSourceChanges() throws IOException {
+        final String path = writeFix(FIX);
+        FixStandaloneSetup.parseFix(path);
+
+        writeFix("add_field('c', 'd')\n");
+        final Fix fix = FixStandaloneSetup.parseFix(path);
+
+        Assertions.assertTrue(fix.eResource() instanceof XtextResource);
+        Assertions.assertEquals(1, fix.getElements().size());
+        Assertions.assertEquals(2, countArtifacts());
+    }
+
+    @Test
+    public void shouldKeepSourcePositionsInArtifact() throws IOException {
+        final String path = writeFix(FIX);
+        new Metafix(path);
+
+        final Metafix metafix = new Metafix(path);
+
+        final FixProcessException exception = Assertions.assertThrows(FixProcessException.class, () -> {
+            metafix.startRecord("1");
+            metafix.endRecord();
+        });
+
+        Assertions.assertEquals("Error while executing Fix expression (at " + XtextValidator.getFileURI(path) +
+                ", line 2): lookup('a', './test.csv')", exception.getMessage());
+    }
+
+    @Test
+    public void shouldIgnoreUnreadableArtifact() throws IOException {
+        final String path = writeFix(FIX);
+        final Path artifact = FixArtifactCache.getArtifact(cacheDir, FIX.getBytes(StandardCharsets.UTF_8));
+
+        Files.createDirectories(cacheDir);
+        Files.write(artifact, new byte[]{1, 2, 3});
+
+        Assertions.assertEquals(2, FixStandaloneSetup.parseFix(path).getElements().size());
+        Assertions.assertTrue(FixStandaloneSetup.parseFix(path).eResource() instanceof BinaryResourceImpl);
+    }
+
+    private String writeFix(final String fixDef) throws IOException {
+        return Files.write(tempDir.resolve("test" + Metafix.FIX_EXTENSION), fixDef.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private long countArtifacts() throws IOException {
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            return stream.filter(p -> p.toString().endsWith(FixArtifactCache.ARTIFACT_EXTENSION)).count();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tests the parsed field path.
+ */
+public class FixPathTest {
+
+    public FixPathTest() {
+    }
+
+    @Test
+    public void shouldReuseParsedPath() {
+        Assertions.assertSame(FixPath.of("a.b.c"), FixPath.of("a.b.c"));
+    }
+
+    @Test
+    public void shouldParseSegments() {
+        final FixPath fixPath = FixPath.of("a.*.$last.1");
+
+        Assertions.assertEquals(4, fixPath.size());
+        Assertions.assertEquals("a.*.$last.1", fixPath.toString());
+    }
+
+    @Test
+    public void shouldReplaceAsteriskWithIndex() {
+        final FixPath fixPath = FixPath.of("a.*.b");
+
+        Assertions.assertEquals("a.2.b", fixPath.to(new Value("x"), 1).toString());
+    }
+
+    @Test
+    public void shouldKeepPathMatchingValuePath() {
+        final FixPath fixPath = FixPath.of("a.*.b");
+
+        Assertions.assertEquals("a.1.b", fixPath.to(new Value("x").withPathSet("a.1.b"), 0).toString());
+    }
+
+    @Test
+    public void shouldUseValuePathForWildcard() {
+        final FixPath fixPath = FixPath.of("a?.b");
+
+        Assertions.assertEquals("ab.b", fixPath.to(new Value("x").withPathSet("ab.b"), 0).toString());
+    }
+
+    @Test
+    public void shouldSetAndGetNestedValue() {
+        final FixPath fixPath = FixPath.of("a.b.c");
+        final Record record = new Record();
+
+        record.set(fixPath, new Value("x"));
+
+        Assertions.assertEquals(new Value("x"), record.get(fixPath));
+    }
+
+    @Test
+    public void shouldBindParsedPathToParams() {
+        final List<String> params = new FixPath.BoundParams(Arrays.asList("a.b", "c"), UnaryOperator.identity());
+
+        Assertions.assertSame(FixPath.of(params, 0), FixPath.of(params, 0));
+        Assertions.assertEquals("c", FixPath.of(params, 1).toString());
+    }
+
+    @Test
+    public void shouldInternLiteralFieldNamesOfBoundParams() {
+        final List<String> names = new ArrayList<>();
+        final List<String> params = new FixPath.BoundParams(Arrays.asList("a.*.$last.1.b?.c"), n -> {
+            names.add(n);
+            return n;
+        });
+
+        FixPath.of(params, 0);
+
+        Assertions.assertEquals(Arrays.asList("a", "c"), names);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.framework.helpers.DefaultStreamReceiver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tests the Fix expression profiler.
+ */
+public class FixProfilerTest {
+
+    private static final int RECORDS = 3;
+
+    public FixProfilerTest() {
+    }
+
+    @Test
+    public void shouldNotProfileByDefault() throws FileNotFoundException {
+        final Metafix metafix = process("upcase('a')");
+
+        Assertions.assertFalse(metafix.getProfile());
+        Assertions.assertTrue(metafix.getProfiler().getEntries().isEmpty());
+    }
+
+    @Test
+    public void shouldProfileExpressionsByLine() throws FileNotFoundException {
+        final Metafix metafix = process("upcase('a')\nif exists('a')\n  downcase('a')\nend", m -> m.setProfile(true));
+        final List<FixProfiler.Entry> entries = metafix.getProfiler().getEntries();
+
+        Assertions.assertEquals(3, entries.size());
+
+        for (final FixProfiler.Entry entry : entries) {
+            Assertions.assertEquals(RECORDS, entry.getCount());
+            Assertions.assertTrue(entry.getTotalNanos() >= entry.getMaxNanos());
+        }
+
+        Assertions.assertEquals("upcase('a')", findEntry(entries, 1).getExpression());
+        Assertions.assertEquals("downcase('a')", findEntry(entries, 3).getExpression());
+    }
+
+    @Test
+    public void shouldReportProfileAsJson() throws FileNotFoundException {
+        final Metafix metafix = process("upcase('a')", m -> m.setProfile(true));
+        final String report = metafix.getProfiler().getReport(FixProfiler.Format.JSON);
+
+        Assertions.assertTrue(report.contains("\"expression\" : \"upcase('a')\""), report);
+        Assertions.assertTrue(report.contains("\"count\" : " + RECORDS), report);
+    }
+
+    @Test
+    public void shouldResetProfile() throws FileNotFoundException {
+        final Metafix metafix = process("upcase('a')", m -> m.setProfile(true));
+        metafix.getProfiler().reset();
+
+        Assertions.assertTrue(metafix.getProfiler().getEntries().isEmpty());
+    }
+
+    private FixProfiler.Entry findEntry(final List<FixProfiler.Entry> entries, final int line) {
+        return entries.stream().filter(e -> e.getLine() == line).findFirst().get();
+    }
+
+    private Metafix process(final String fixDef) throws FileNotFoundException {
+        return process(fixDef, m -> { });
+    }
+
+    private Metafix process(final String fixDef, final Consumer<Metafix> consumer) throws FileNotFoundException {
+        final Metafix metafix = new Metafix(fixDef);
+        metafix.setReceiver(new DefaultStreamReceiver());
+        consumer.accept(metafix);
+
+        for (int i = 0; i < RECORDS; ++i) {
+            metafix.startRecord(String.valueOf(i));
+            metafix.literal("a", "b");
+            metafix.endRecord();
+        }
+
+        metafix.closeStream();
+        return metafix;
+    }
+
+}
@@ -17,6 +17,7 @@
 package org.metafacture.metafix;
 
 import nl.jqno.equalsverifier.EqualsVerifier;
+import nl.jqno.equalsverifier.Warning;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -42,6 +43,8 @@ public class HashValueTest {
     public void shouldSatisfyEqualsContract() {
         EqualsVerifier.forClass(Value.Hash.class)
             .withPrefabValues(Value.class, Value.newArray(), Value.newHash())
+            .withIgnoredFields("share", "owner")
+            .suppress(Warning.NONFINAL_FIELDS)
             .verify();
     }
 
@@ -113,6 +116,19 @@ public class HashValueTest {
         Assertions.assertTrue(hash.isEmpty());
     }
 
+    @Test
+    public void shouldMergeRepeatedFieldByPlainName() {
+        final Value.Hash hash = newHash();
+        hash.addField("a.b", new Value("1"));
+        hash.addField("a.b", new Value("2"));
+        hash.addField("$last", new Value("3"));
+        hash.addField("$last", new Value("4"));
+
+        Assertions.assertEquals(2, hash.size());
+        Assertions.assertEquals(newArray("1", "2"), hash.getField("a.b"));
+        Assertions.assertEquals(newArray("3", "4"), hash.getField("$last"));
+    }
+
     @Test
     public void shouldGetSizeOfDefaultMapping() {
         final Value.Hash hash = newHash();
@@ -417,6 +433,10 @@ public class HashValueTest {
         return Value.newHash().asHash();
     }
 
+    private Value newArray(final String... values) {
+        return Value.newArray(a -> Arrays.stream(values).forEach(v -> a.add(new Value(v))));
+    }
+
     private void assertArray(final Value result) {
         Assertions.assertTrue(result.isArray());
 
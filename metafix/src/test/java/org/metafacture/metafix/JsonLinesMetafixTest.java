@@ -0,0 +1,195 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.framework.MetafactureException;
+import org.metafacture.framework.StreamReceiver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Tests transforming JSON lines without stream events.
+ */
+@ExtendWith(MockitoExtension.class)
+public class JsonLinesMetafixTest {
+
+    private static final String JSON_LINES =
+        "{\"a\":\"Aloha\",\"b\":[1,true,null,{\"c\":\"Moin\"}],\"d\":{\"e\":[[\"Tach\"]]}}\n" +
+        "{\"a\":\"Hey\",\"f\":null}\n";
+
+    @TempDir
+    public Path tempDir; // checkstyle-disable-line VisibilityModifier
+
+    @Mock
+    private StreamReceiver streamReceiver;
+
+    public JsonLinesMetafixTest() {
+    }
+
+    @Test
+    public void shouldTransformJsonLinesFromReader() throws FileNotFoundException {
+        final JsonLinesMetafix metafix = jsonLinesMetafix();
+
+        metafix.process(new StringReader(JSON_LINES));
+        metafix.closeStream();
+
+        verifyRecords();
+    }
+
+    @Test
+    public void shouldTransformJsonLinesFromMappedFile() throws IOException {
+        final Path file = tempDir.resolve("input.jsonl");
+        Files.write(file, JSON_LINES.getBytes(StandardCharsets.UTF_8));
+
+        final JsonLinesMetafix metafix = jsonLinesMetafix();
+
+        metafix.process(file);
+        metafix.closeStream();
+
+        verifyRecords();
+    }
+
+    @Test
+    public void shouldTransformJsonLinesAcrossMappedRegions() throws IOException {
+        final char[] chars = new char[1 << 24];
+        Arrays.fill(chars, 'x');
+        final String value = new String(chars);
+
+        final Path file = tempDir.resolve("input.jsonl");
+        Files.write(file, ("{\"a\":\"" + value + "\"}\n{\"a\":\"y\"}\n").getBytes(StandardCharsets.UTF_8));
+
+        final JsonLinesMetafix metafix = new JsonLinesMetafix("nothing()");
+        metafix.setReceiver(streamReceiver);
+
+        metafix.process(file);
+        metafix.closeStream();
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+        ordered.verify(streamReceiver).startRecord("1");
+        ordered.verify(streamReceiver).literal("a", value);
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).startRecord("2");
+        ordered.verify(streamReceiver).literal("a", "y");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void shouldNumberRecordsAcrossInputs() throws FileNotFoundException {
+        final JsonLinesMetafix metafix = new JsonLinesMetafix("nothing()");
+        metafix.setReceiver(streamReceiver);
+
+        metafix.process(new StringReader("{\"a\":\"x\"}"));
+        metafix.process(new StringReader("{\"a\":\"y\"}"));
+        metafix.resetStream();
+        metafix.process(new StringReader("{\"a\":\"z\"}"));
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+        ordered.verify(streamReceiver).startRecord("1");
+        ordered.verify(streamReceiver).literal("a", "x");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).startRecord("2");
+        ordered.verify(streamReceiver).literal("a", "y");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).resetStream();
+        ordered.verify(streamReceiver).startRecord("1");
+        ordered.verify(streamReceiver).literal("a", "z");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void shouldMergeRepeatedFields() throws FileNotFoundException {
+        final JsonLinesMetafix metafix = new JsonLinesMetafix("nothing()");
+        metafix.setReceiver(streamReceiver);
+
+        metafix.process(new StringReader("{\"a\":\"x\",\"a\":\"y\"}"));
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+        ordered.verify(streamReceiver).startRecord("1");
+        ordered.verify(streamReceiver).literal("a", "x");
+        ordered.verify(streamReceiver).literal("a", "y");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void shouldNotTransformNonObjectRecord() throws FileNotFoundException {
+        final JsonLinesMetafix metafix = new JsonLinesMetafix("nothing()");
+        metafix.setReceiver(streamReceiver);
+
+        MetafixTestHelpers.assertThrows(MetafactureException.class, s -> s.replaceAll(" at .*", ""), "Unexpected token 'START_ARRAY'", () ->
+                metafix.process(new StringReader("[\"a\"]"))
+        );
+    }
+
+    @Test
+    public void shouldNotTransformInvalidJson() throws FileNotFoundException {
+        final JsonLinesMetafix metafix = new JsonLinesMetafix("nothing()");
+        metafix.setReceiver(streamReceiver);
+
+        Assertions.assertThrows(MetafactureException.class, () -> metafix.process(new StringReader("{\"a\":")));
+    }
+
+    private JsonLinesMetafix jsonLinesMetafix() throws FileNotFoundException {
+        final JsonLinesMetafix metafix = new JsonLinesMetafix("upcase('a')");
+        metafix.setReceiver(streamReceiver);
+
+        return metafix;
+    }
+
+    private void verifyRecords() {
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+
+        ordered.verify(streamReceiver).startRecord("1");
+        ordered.verify(streamReceiver).literal("a", "ALOHA");
+        ordered.verify(streamReceiver).startEntity("b[]");
+        ordered.verify(streamReceiver).literal("1", "1");
+        ordered.verify(streamReceiver).literal("2", "true");
+        ordered.verify(streamReceiver).startEntity("3");
+        ordered.verify(streamReceiver).literal("c", "Moin");
+        ordered.verify(streamReceiver, Mockito.times(2)).endEntity();
+        ordered.verify(streamReceiver).startEntity("d");
+        ordered.verify(streamReceiver).startEntity("e[]");
+        ordered.verify(streamReceiver).startEntity("1[]");
+        ordered.verify(streamReceiver).literal("1", "Tach");
+        ordered.verify(streamReceiver, Mockito.times(3)).endEntity();
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).startRecord("2");
+        ordered.verify(streamReceiver).literal("a", "HEY");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tests the JSON serialization of values.
+ */
+public class JsonValueTest {
+
+    private static final UnaryOperator<String> LOCATION = s -> s.replaceAll("\n at .*", "");
+
+    private static final String JSON = "{\"a\":\"Aloha\",\"b\":[\"Moin zäme\",{\"c\":\"Tach\"}]}";
+
+    public JsonValueTest() {
+    }
+
+    @Test
+    public void shouldSerializeRepeatedly() throws IOException {
+        final Value value = newValue();
+
+        Assertions.assertEquals(JSON, value.toJson());
+        Assertions.assertEquals(JSON, value.toJson());
+        Assertions.assertEquals("\"Aloha\"", new Value("Aloha").toJson());
+    }
+
+    @Test
+    public void shouldSerializeWithPrettyPrinting() throws IOException {
+        final String expected = "{\n  \"a\" : \"Aloha\",\n  \"b\" : [ \"Moin zäme\", {\n    \"c\" : \"Tach\"\n  } ]\n}";
+        final Value value = newValue();
+
+        Assertions.assertEquals(expected, value.toJson(true));
+        Assertions.assertEquals(JSON, value.toJson(false));
+        Assertions.assertEquals(expected, value.toJson(true));
+    }
+
+    @Test
+    public void shouldSerializeToWriter() throws IOException {
+        final StringWriter writer = new StringWriter();
+
+        newValue().toJson(writer, false);
+        writer.write('\n');
+        newValue().toJson(writer, false);
+
+        Assertions.assertEquals(JSON + "\n" + JSON, writer.toString());
+    }
+
+    @Test
+    public void shouldSerializeToOutputStream() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        newValue().toJson(outputStream, false);
+
+        Assertions.assertEquals(JSON, new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldSerializeRecord() throws IOException {
+        final Record record = new Record();
+        record.put("a", new Value("Aloha"));
+        record.putVirtualField("_id", new Value("1"));
+
+        Assertions.assertEquals("{\"a\":\"Aloha\"}", record.toJson());
+    }
+
+    @Test
+    public void shouldParseNestedValues() throws IOException {
+        Assertions.assertEquals(newValue(), new JsonValue.Parser().parse(JSON));
+    }
+
+    @Test
+    public void shouldParseNonStringScalarsAsNull() throws IOException {
+        final Value value = new JsonValue.Parser().parse("[1,true,null,\"a\"]");
+
+        Assertions.assertEquals(Value.newArray(a -> a.add(new Value("a"))), value);
+    }
+
+    @Test
+    public void shouldInternParsedNamesAndValues() throws IOException {
+        final StringPool pool = new StringPool(10);
+        final JsonValue.Parser parser = new JsonValue.Parser(pool::intern, pool::intern);
+
+        final Value.Hash first = parser.parse("{\"a\":\"ger\"}").asHash();
+        final Value.Hash second = parser.parse("{\"b\":\"ger\"}").asHash();
+
+        Assertions.assertSame(first.get("a").asString(), second.get("b").asString());
+        Assertions.assertEquals(3, pool.size());
+    }
+
+    @Test
+    public void shouldNotParseBeyondMaximumDepth() throws IOException {
+        final JsonValue.Parser parser = new JsonValue.Parser();
+        parser.setMaxDepth(2);
+
+        Assertions.assertEquals(1, parser.parse("[[\"a\"]]").asArray().size());
+        MetafixTestHelpers.assertThrows(JsonParseException.class, LOCATION, "Maximum nesting depth exceeded: 2", () -> parser.parse("[[[\"a\"]]]"));
+    }
+
+    @Test
+    public void shouldNotParseBeyondMaximumLength() throws IOException {
+        final JsonValue.Parser parser = new JsonValue.Parser();
+        parser.setMaxLength(JSON.length());
+
+        Assertions.assertEquals(newValue(), parser.parse(JSON));
+        MetafixTestHelpers.assertThrows(JsonParseException.class, LOCATION, "Maximum length exceeded: " + (JSON.length() + 1) + " > " + JSON.length(), () -> parser.parse(JSON + " "));
+    }
+
+    @Test
+    public void shouldNotParseInvalidJson() {
+        Assertions.assertThrows(JsonParseException.class, () -> new JsonValue.Parser().parse("{\"a\":[\"b\""));
+    }
+
+    private Value newValue() {
+        return Value.newHash(h -> {
+            h.put("a", new Value("Aloha"));
+            h.put("b", Value.newArray(a -> {
+                a.add(new Value("Moin zäme"));
+                a.add(Value.newHash(i -> i.put("c", new Value("Tach"))));
+            }));
+        });
+    }
+
+}
@@ -1082,9 +1082,9 @@ public class MetafixIfTest {
     public void shouldIncludeLocationAndTextInProcessExceptionInConditional() {
         final String text1 = "elsif exists()";
         final String text2 = "nothing()";
-        final String message = "Error while executing Fix expression (at FILE, line 3): " + text1 + " " + text2;
+        final String message = "Error while executing Fix expression (at " + FixStandaloneSetup.INLINE_FIX_URI + ", line 3): " + text1 + " " + text2;
 
-        MetafixTestHelpers.assertThrows(FixProcessException.class, s -> s.replaceAll("file:/.+?\\.fix", "FILE"), message, () ->
+        MetafixTestHelpers.assertThrows(FixProcessException.class, message, () ->
             MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
                     "if exists('animal')",
                     "nothing()",
@@ -1110,9 +1110,9 @@ public class MetafixIfTest {
     @Test
     public void shouldIncludeLocationAndTextInProcessExceptionInBody() {
         final String text = "add_field()";
-        final String message = "Error while executing Fix expression (at FILE, line 4): " + text;
+        final String message = "Error while executing Fix expression (at " + FixStandaloneSetup.INLINE_FIX_URI + ", line 4): " + text;
 
-        MetafixTestHelpers.assertThrows(FixProcessException.class, s -> s.replaceAll("file:/.+?\\.fix", "FILE"), message, () ->
+        MetafixTestHelpers.assertThrows(FixProcessException.class, message, () ->
             MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
                     "if exists('animal')",
                     "nothing()",
@@ -17,14 +17,29 @@
 package org.metafacture.metafix;
 
 import org.metafacture.framework.StreamReceiver;
+import org.metafacture.metafix.maps.BatchMap;
+import org.metafacture.metafix.maps.SharedMapRegistry;
 import org.metafacture.metamorph.api.MorphExecutionException;
+import org.metafacture.metamorph.api.helpers.AbstractReadOnlyMap;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Tests Metafix lookup. Following the cheat sheet examples at
@@ -388,6 +403,338 @@ public class MetafixLookupTest {
         );
     }
 
+    @Test
+    public void shouldLookupInSeparateExternalIndexedFileMap() {
+        assertMap(
+                "put_filemap('" + CSV_MAP + "', 'testMap', index: 'true')",
+                LOOKUP + " 'testMap')"
+        );
+    }
+
+    @Test
+    public void shouldLookupInSeparateExternalCachedFileMap() {
+        assertMap(
+                "put_filemap('" + CSV_MAP + "', 'testMap', cache_size: '1')",
+                LOOKUP + " 'testMap')"
+        );
+    }
+
+    @Test
+    public void shouldLookupInSeparateCachedMap() {
+        assertMap(
+                "put_map('testMap', Aloha: Alohaeha, 'Moin': 'Moin zäme', __default: Tach)",
+                "put_cachedmap('testMap', cache_policy: 'lfu')",
+                LOOKUP + " 'testMap')"
+        );
+    }
+
+    @Test
+    public void shouldLookupInSeparateExternalCompactFileMap() {
+        assertMap(
+                "put_filemap('" + CSV_MAP + "', 'testMap', compact: 'true')",
+                LOOKUP + " 'testMap')"
+        );
+    }
+
+    @Test
+    public void shouldLookupInSeparateCompactMap() {
+        assertMap(
+                "put_map('testMap', Aloha: Alohaeha, 'Moin': 'Moin zäme', __default: Tach)",
+                "put_compactmap('testMap')",
+                LOOKUP + " 'testMap')"
+        );
+    }
+
+    @Test
+    public void shouldLookupInCompactedFileMap() {
+        assertMap(
+                "put_filemap('" + CSV_MAP + "', 'testMap')",
+                "put_compactmap('testMap')",
+                LOOKUP + " 'testMap')"
+        );
+    }
+
+    @Test
+    public void shouldLookupInCompactedCachedMap() {
+        assertMap(
+                "put_filemap('" + CSV_MAP + "', 'testMap', cache_size: '1')",
+                "put_compactmap('testMap', 'compactMap')",
+                LOOKUP + " 'compactMap')"
+        );
+    }
+
+    @Test
+    public void shouldNotCompactMapWithoutKeys() {
+        MetafixTestHelpers.assertProcessException(IllegalArgumentException.class, "Map can't be compacted, its keys can't be listed: testMap", () -> {
+            final Metafix metafix = new Metafix("put_compactmap('testMap')");
+            metafix.putMap("testMap", new AbstractReadOnlyMap<String, String>() {
+                @Override
+                public String get(final Object key) {
+                    return null;
+                }
+            });
+
+            metafix.startRecord("1");
+            metafix.endRecord();
+        });
+    }
+
+    @Test
+    public void shouldLookupPrefixInIndexedFileMap() {
+        assertMap(
+                "put_filemap('" + CSV_MAP + "', 'testMap', index: 'true')",
+                LOOKUP + " 'testMap', match: 'prefix')"
+        );
+    }
+
+    @Test
+    public void shouldNotCompactUnknownMap() {
+        MetafixTestHelpers.assertProcessException(IllegalArgumentException.class, "Unknown map: testMap", () ->
+                assertMap(
+                    "put_compactmap('testMap')",
+                    LOOKUP + " 'testMap')"
+                )
+        );
+    }
+
+    @Test
+    public void shouldNotMatchOptionsInInlineMap() {
+        MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
+                "lookup('prefix.*', Al: Aloha, match: 'prefix')",
+                "lookup('regex.*', 'Mo.*': Moin, match: 'regex', delete: 'true')"
+            ),
+            i -> {
+                i.startRecord("1");
+                i.literal("prefix", "Alo");
+                i.literal("prefix", "matching");
+                i.literal("regex", "Mooin");
+                i.literal("regex", "match");
+                i.literal("regex", "delete");
+                i.endRecord();
+            },
+            o -> {
+                o.get().startRecord("1");
+                o.get().literal("prefix", "Aloha");
+                o.get().literal("prefix", "matching");
+                o.get().literal("regex", "Moin");
+                o.get().endRecord();
+            }
+        );
+    }
+
+    @Test
+    public void shouldLookupLongestPrefix() {
+        MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
+                "put_map('classes', '1': Philosophy, '12': Ethics, __default: Other)",
+                "lookup('title.*', 'classes', match: 'longest_prefix')"
+            ),
+            i -> {
+                i.startRecord("1");
+                i.literal("title", "123.4");
+                i.literal("title", "13");
+                i.literal("title", "2");
+                i.endRecord();
+            },
+            o -> {
+                o.get().startRecord("1");
+                o.get().literal("title", "Ethics");
+                o.get().literal("title", "Philosophy");
+                o.get().literal("title", "Other");
+                o.get().endRecord();
+            }
+        );
+    }
+
+    @Test
+    public void shouldLookupRegex() {
+        MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
+                "put_map('classes', '[A-Z]{2}': Letters, '\\\\d+': Digits)",
+                "lookup('title.*', 'classes', match: 'regex')"
+            ),
+            i -> {
+                i.startRecord("1");
+                i.literal("title", "AB");
+                i.literal("title", "123");
+                i.literal("title", "ABC");
+                i.endRecord();
+            },
+            o -> {
+                o.get().startRecord("1");
+                o.get().literal("title", "Letters");
+                o.get().literal("title", "Digits");
+                o.get().literal("title", "ABC");
+                o.get().endRecord();
+            }
+        );
+    }
+
+    @Test
+    public void shouldNotCacheUnknownMap() {
+        MetafixTestHelpers.assertProcessException(IllegalArgumentException.class, "Unknown map: testMap", () ->
+                assertMap(
+                    "put_cachedmap('testMap')",
+                    LOOKUP + " 'testMap')"
+                )
+        );
+    }
+
+    @Test
+    public void shouldPutFileMapOnlyOnce() throws FileNotFoundException {
+        final Metafix metafix = new Metafix("put_filemap('" + CSV_MAP + "', 'testMap')\n" + LOOKUP + " 'testMap')");
+        metafix.setReceiver(streamReceiver);
+
+        metafix.startRecord("1");
+        metafix.endRecord();
+
+        final Map<String, String> map = metafix.getMap("testMap");
+
+        metafix.startRecord("2");
+        metafix.endRecord();
+
+        Assertions.assertSame(map, metafix.getMap("testMap"));
+    }
+
+    @Test
+    public void shouldReleaseReplacedFileMap() throws FileNotFoundException {
+        final Metafix metafix = new Metafix("if exists('title') put_filemap('" + CSV_MAP + "', 'testMap') end");
+        metafix.setReceiver(streamReceiver);
+
+        metafix.startRecord("1");
+        metafix.literal("title", "Aloha");
+        metafix.endRecord();
+
+        final SharedMapRegistry.SharedMap map = (SharedMapRegistry.SharedMap) metafix.getMap("testMap");
+        final int references = map.getReferences();
+
+        metafix.startRecord("2");
+        metafix.literal("title", "Moin");
+        metafix.endRecord();
+
+        final SharedMapRegistry.SharedMap replacedMap = (SharedMapRegistry.SharedMap) metafix.getMap("testMap");
+
+        Assertions.assertNotSame(map, replacedMap);
+        Assertions.assertEquals(references, replacedMap.getReferences());
+
+        metafix.closeStream();
+
+        Assertions.assertEquals(references - 1, replacedMap.getReferences());
+    }
+
+    @Test
+    public void shouldNotCloseMapWrappedUnderItsOwnName() throws FileNotFoundException {
+        final CloseableMap map = new CloseableMap();
+        map.put("Aloha", "Alohaeha");
+
+        final Metafix metafix = new Metafix("put_cachedmap('testMap')\n" + LOOKUP + " 'testMap')");
+        metafix.putMap("testMap", map);
+        metafix.setReceiver(streamReceiver);
+
+        metafix.startRecord("1");
+        metafix.literal("title", "Aloha");
+        metafix.endRecord();
+
+        Assertions.assertEquals(0, map.closed);
+
+        metafix.startRecord("2");
+        metafix.literal("title", "Aloha");
+        metafix.endRecord();
+
+        metafix.closeStream();
+
+        Mockito.verify(streamReceiver, Mockito.times(2)).literal("title", "Alohaeha");
+        Assertions.assertEquals(1, map.closed);
+    }
+
+    @Test
+    public void shouldPutMapInConditionalForEachRecord() {
+        MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
+                "if any_equal('map', 'a')",
+                "  put_map('testMap', Aloha: A)",
+                "else",
+                "  put_map('testMap', Aloha: B)",
+                "end",
+                "lookup('title', 'testMap')"
+            ),
+            i -> {
+                i.startRecord("1");
+                i.literal("map", "a");
+                i.literal("title", "Aloha");
+                i.endRecord();
+
+                i.startRecord("2");
+                i.literal("map", "b");
+                i.literal("title", "Aloha");
+                i.endRecord();
+            },
+            o -> {
+                o.get().startRecord("1");
+                o.get().literal("map", "a");
+                o.get().literal("title", "A");
+                o.get().endRecord();
+
+                o.get().startRecord("2");
+                o.get().literal("map", "b");
+                o.get().literal("title", "B");
+                o.get().endRecord();
+            }
+        );
+    }
+
+    @Test
+    public void shouldPutMapInIncludeForEachCall() {
+        MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
+                "include('src/test/resources/org/metafacture/metafix/fixes/put_map.fix', value: 'A')",
+                "lookup('a', 'testMap')",
+                "include('src/test/resources/org/metafacture/metafix/fixes/put_map.fix', value: 'B')",
+                "lookup('b', 'testMap')"
+            ),
+            i -> {
+                i.startRecord("1");
+                i.literal("a", "Aloha");
+                i.literal("b", "Aloha");
+                i.endRecord();
+            },
+            o -> {
+                o.get().startRecord("1");
+                o.get().literal("a", "A");
+                o.get().literal("b", "B");
+                o.get().endRecord();
+            }
+        );
+    }
+
+    @Test
+    public void shouldPutVarForEachRecord() {
+        MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
+                "put_var('testVar', 'A')",
+                "if any_equal('var', 'b')",
+                "  put_var('testVar', 'B')",
+                "end",
+                "add_field('test', '$[testVar]')"
+            ),
+            i -> {
+                i.startRecord("1");
+                i.literal("var", "b");
+                i.endRecord();
+
+                i.startRecord("2");
+                i.literal("var", "a");
+                i.endRecord();
+            },
+            o -> {
+                o.get().startRecord("1");
+                o.get().literal("var", "b");
+                o.get().literal("test", "B");
+                o.get().endRecord();
+
+                o.get().startRecord("2");
+                o.get().literal("var", "a");
+                o.get().literal("test", "A");
+                o.get().endRecord();
+            }
+        );
+    }
+
     @Test
     public void shouldIgnoreOptionsOnLookupInSeparateInternalMap() {
         assertMap(
@@ -846,6 +1193,125 @@ public class MetafixLookupTest {
         );
     }
 
+    @Test
+    public void shouldPrefetchLookupValuesInBatches() throws FileNotFoundException {
+        final List<Object> queries = new ArrayList<>();
+        final TestBatchMap map = new TestBatchMap(queries);
+        map.put("Aloha", "Alohaeha");
+        map.put("Moin", "Moin zäme");
+        map.put("__default", "Tach");
+
+        final Metafix metafix = new Metafix(LOOKUP + " testMap)");
+        metafix.putMap("testMap", map);
+        metafix.setPrefetchWindow(2);
+        metafix.setReceiver(streamReceiver);
+
+        final String[] titles = {"Aloha", "Hey", "Moin"};
+
+        for (int i = 0; i < titles.length; ++i) {
+            metafix.startRecord(String.valueOf(i));
+            metafix.literal("title", titles[i]);
+            metafix.endRecord();
+        }
+
+        metafix.closeStream();
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+        ordered.verify(streamReceiver).startRecord("0");
+        ordered.verify(streamReceiver).literal("title", "Alohaeha");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).startRecord("1");
+        ordered.verify(streamReceiver).literal("title", "Tach");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).startRecord("2");
+        ordered.verify(streamReceiver).literal("title", "Moin zäme");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+
+        Assertions.assertEquals(Arrays.asList(
+                    Arrays.asList("Aloha", "Hey", "__default"),
+                    Arrays.asList("Moin", "__default")
+                ), queries);
+    }
+
+    @Test
+    public void shouldSkipNonStringValuesWhenPrefetching() throws FileNotFoundException {
+        final List<Object> queries = new ArrayList<>();
+        final TestBatchMap map = new TestBatchMap(queries);
+        map.put("Moin", "Moin zäme");
+
+        final Metafix metafix = new Metafix("if is_string('title') lookup('title', testMap) end");
+        metafix.putMap("testMap", map);
+        metafix.setPrefetchWindow(2);
+        metafix.setReceiver(streamReceiver);
+
+        metafix.startRecord("0");
+        metafix.startEntity("title");
+        metafix.literal("name", "Aloha");
+        metafix.endEntity();
+        metafix.endRecord();
+
+        metafix.startRecord("1");
+        metafix.literal("title", "Moin");
+        metafix.endRecord();
+
+        metafix.closeStream();
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+        ordered.verify(streamReceiver).startRecord("0");
+        ordered.verify(streamReceiver).startEntity("title");
+        ordered.verify(streamReceiver).literal("name", "Aloha");
+        ordered.verify(streamReceiver).endEntity();
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).startRecord("1");
+        ordered.verify(streamReceiver).literal("title", "Moin zäme");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+
+        Assertions.assertEquals(Arrays.asList(
+                    Arrays.asList("Moin", "__default")
+                ), queries);
+    }
+
+    @Test
+    public void shouldNotExposePrefetchedValuesToMapFunctions() throws FileNotFoundException {
+        final List<Object> queries = new ArrayList<>();
+        final TestBatchMap map = new TestBatchMap(queries);
+        map.put("Aloha", "Alohaeha");
+        map.put("Moin", "Moin zäme");
+
+        final Metafix metafix = new Metafix("lookup('title', testMap) lookup('other', testMap, match: 'prefix')");
+        metafix.putMap("testMap", map);
+        metafix.setPrefetchWindow(2);
+        metafix.setReceiver(streamReceiver);
+
+        metafix.startRecord("0");
+        metafix.literal("title", "Aloha");
+        metafix.literal("other", "Moin moin");
+        metafix.endRecord();
+
+        metafix.closeStream();
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+        ordered.verify(streamReceiver).startRecord("0");
+        ordered.verify(streamReceiver).literal("title", "Alohaeha");
+        ordered.verify(streamReceiver).literal("other", "Moin zäme");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+
+        Assertions.assertSame(map, metafix.getMap("testMap"));
+    }
+
+    @Test
+    public void shouldFailOnNegativePrefetchWindow() {
+        MetafixTestHelpers.assertThrows(IllegalArgumentException.class, "Prefetch window must not be negative: -1", () ->
+                new Metafix().setPrefetchWindow(-1)
+        );
+    }
+
     private void assertMap(final String... fixDef) {
         MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(fixDef),
             i -> {
@@ -865,4 +1331,50 @@ public class MetafixLookupTest {
         );
     }
 
+    private static class CloseableMap extends HashMap<String, String> implements Closeable {
+
+        private int closed;
+
+        private CloseableMap() {
+        }
+
+        @Override
+        public void close() {
+            ++closed;
+        }
+
+    }
+
+    private static class TestBatchMap extends HashMap<String, String> implements BatchMap {
+
+        private final List<Object> queries;
+
+        private TestBatchMap(final List<Object> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        public String get(final Object key) {
+            queries.add(key);
+            return super.get(key);
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getAllAsync(final Collection<String> keys) {
+            queries.add(new ArrayList<>(new TreeSet<>(keys)));
+
+            final Map<String, String> result = new HashMap<>();
+            keys.forEach(k -> {
+                final String value = super.get(k);
+
+                if (value != null) {
+                    result.put(k, value);
+                }
+            });
+
+            return CompletableFuture.completedFuture(result);
+        }
+
+    }
+
 }
@@ -973,9 +973,9 @@ public class MetafixMethodTest {
     // See https://github.com/metafacture/metafacture-fix/issues/123
     public void shouldIncludeLocationAndTextInExecutionException() {
         final String text = "append('animals', ' is cool')";
-        final String message = "Error while executing Fix expression (at FILE, line 2): " + text;
+        final String message = "Error while executing Fix expression (at " + FixStandaloneSetup.INLINE_FIX_URI + ", line 2): " + text;
 
-        MetafixTestHelpers.assertThrows(FixExecutionException.class, s -> s.replaceAll("file:/.+?\\.fix", "FILE"), message, () ->
+        MetafixTestHelpers.assertThrows(FixExecutionException.class, message, () ->
             MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
                     "# comment",
                     text,
@@ -2411,6 +2411,39 @@ public class MetafixMethodTest {
         );
     }
 
+    @Test
+    public void shouldNotModifyOriginalOfCopiedHash() {
+        MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
+                "copy_field('a', 'b')",
+                "add_field('b.c', 'new')",
+                "replace_all('b.n[].*', 'o', '__')"
+            ),
+            i -> {
+                i.startRecord("1");
+                i.startEntity("a");
+                i.startEntity("n[]");
+                i.literal("1", "Dog");
+                i.endEntity();
+                i.endEntity();
+                i.endRecord();
+            },
+            (o, f) -> {
+                o.get().startRecord("1");
+                o.get().startEntity("a");
+                o.get().startEntity("n[]");
+                o.get().literal("1", "Dog");
+                f.apply(2).endEntity();
+                o.get().startEntity("b");
+                o.get().startEntity("n[]");
+                o.get().literal("1", "D__g");
+                o.get().endEntity();
+                o.get().literal("c", "new");
+                o.get().endEntity();
+                o.get().endRecord();
+            }
+        );
+    }
+
     @Test
     public void shouldReplaceAllRegexesInMovedArraySubField() {
         MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
@@ -3172,7 +3172,6 @@ public class MetafixRecordTest {
     }
 
     @Test
-    @MetafixToDo("See https://github.com/metafacture/metafacture-fix/pull/170")
     public void shouldNotSplitLiteralName() {
         MetafixTestHelpers.assertFix(streamReceiver, Arrays.asList(
                 "nothing()"
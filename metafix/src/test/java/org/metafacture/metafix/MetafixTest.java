@@ -16,15 +16,21 @@
 
 package org.metafacture.metafix;
 
+import org.metafacture.framework.helpers.DefaultStreamReceiver;
+import org.metafacture.metafix.fix.Fix;
 import org.metafacture.metamorph.api.Maps;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.FileNotFoundException;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -157,6 +163,229 @@ public class MetafixTest {
         Assertions.assertEquals(VALUE, metafix.getValue(MAP_NAME, KEY));
     }
 
+    @Test
+    public void shouldBuildNestedRecordFromEvents() throws FileNotFoundException {
+        final Metafix metafix = new Metafix("nothing()");
+        metafix.setReceiver(new DefaultStreamReceiver());
+
+        metafix.startRecord("1");
+        metafix.startEntity("a");
+        metafix.startEntity("b[]");
+        metafix.literal("c", VALUE);
+        metafix.literal("c", VALUE + "2");
+        metafix.endEntity();
+        metafix.endEntity();
+        metafix.endRecord();
+
+        final Value value = metafix.getCurrentRecord().get("a.b[].2");
+
+        Assertions.assertEquals(VALUE + "2", value.asString());
+        Assertions.assertEquals("a.b[].2", value.getPath());
+    }
+
+    @Test
+    public void shouldMergeRepeatedDottedLiterals() throws FileNotFoundException {
+        final List<String> literals = new ArrayList<>();
+
+        final Metafix metafix = new Metafix("nothing()");
+        metafix.setReceiver(new DefaultStreamReceiver() {
+            @Override
+            public void literal(final String name, final String value) {
+                literals.add(name + "=" + value);
+            }
+        });
+
+        metafix.startRecord("1");
+        metafix.literal("a.b", VALUE);
+        metafix.literal("a.b", VALUE + "2");
+        metafix.startEntity("c");
+        metafix.literal("x.1", VALUE);
+        metafix.literal("x.1", VALUE + "2");
+        metafix.endEntity();
+        metafix.endRecord();
+
+        Assertions.assertEquals(Arrays.asList("a.b=" + VALUE, "a.b=" + VALUE + "2", "x.1=" + VALUE, "x.1=" + VALUE + "2"), literals);
+    }
+
+    @Test
+    public void shouldEmitLargeArrayWithIndexNames() throws FileNotFoundException {
+        final int size = 2000;
+        final List<String> names = new ArrayList<>();
+
+        final Metafix metafix = new Metafix("nothing()");
+        metafix.setReceiver(new DefaultStreamReceiver() {
+            @Override
+            public void literal(final String name, final String value) {
+                names.add(name);
+            }
+        });
+
+        metafix.startRecord("1");
+        metafix.startEntity("a[]");
+        for (int i = 0; i < size; ++i) {
+            metafix.literal("b", VALUE);
+        }
+        metafix.endEntity();
+        metafix.endRecord();
+
+        Assertions.assertEquals(size, names.size());
+        Assertions.assertEquals("1", names.get(0));
+        Assertions.assertEquals(String.valueOf(size), names.get(size - 1));
+    }
+
+    @Test
+    public void shouldReuseRecords() throws FileNotFoundException {
+        final List<String> events = new ArrayList<>();
+
+        final Metafix metafix = new Metafix("if any_equal('c', 'x')\n  reject()\nend\nadd_field('f', 'y')");
+        metafix.setReuseRecords(true);
+        metafix.setReceiver(new DefaultStreamReceiver() {
+            @Override
+            public void startRecord(final String identifier) {
+                events.add("{" + identifier);
+            }
+
+            @Override
+            public void endRecord() {
+                events.add("}");
+            }
+
+            @Override
+            public void startEntity(final String name) {
+                events.add(name + "{");
+            }
+
+            @Override
+            public void endEntity() {
+                events.add("}");
+            }
+
+            @Override
+            public void literal(final String name, final String value) {
+                events.add(name + "=" + value);
+            }
+        });
+
+        final String[][] records = {{"a", "b", "1", "x"}, {"a", "b", "2", null}, {"d", "e", "3", null}};
+
+        for (int i = 0; i < records.length; ++i) {
+            final String[] record = records[i];
+
+            metafix.startRecord(String.valueOf(i + 1));
+            metafix.startEntity(record[0]);
+            metafix.literal(record[1], record[2]);
+            metafix.endEntity();
+            if (record[3] != null) {
+                metafix.literal("c", record[3]);
+            }
+            metafix.endRecord();
+        }
+
+        Assertions.assertEquals(Arrays.asList("{2", "a{", "b=2", "}", "f=y", "}", "{3", "d{", "e=3", "}", "f=y", "}"), events);
+    }
+
+    @Test
+    public void shouldClearPooledEntitiesBeforeReuse() throws FileNotFoundException {
+        final List<Record> records = new ArrayList<>();
+        final List<Value> entities = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
+
+        final Metafix metafix = reusingMetafix(records, entities, paths);
+
+        sendRecord(metafix, "1", "a", "b", "c");
+        sendRecord(metafix, "2", "d", "e");
+
+        Assertions.assertEquals(Arrays.asList("{1", "a@a", "b@a.b", "c@a.c", "{2", "d@d", "e@d.e"), paths);
+
+        Assertions.assertSame(records.get(0), records.get(1));
+        Assertions.assertSame(entities.get(0), entities.get(1));
+    }
+
+    @Test
+    public void shouldReuseRecordsWithPrefetchWindow() throws FileNotFoundException {
+        final List<Record> records = new ArrayList<>();
+        final List<Value> entities = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
+
+        final Metafix metafix = reusingMetafix(records, entities, paths);
+        metafix.setPrefetchWindow(2);
+
+        sendRecord(metafix, "1", "a", "b", "c");
+        sendRecord(metafix, "2", "d", "e");
+        sendRecord(metafix, "3", "f", "g");
+        metafix.closeStream();
+
+        Assertions.assertEquals(Arrays.asList("{1", "a@a", "b@a.b", "c@a.c", "{2", "d@d", "e@d.e", "{3", "f@f", "g@f.g"), paths);
+
+        // records of the same window must not share instances
+        Assertions.assertNotSame(records.get(0), records.get(1));
+        Assertions.assertNotSame(entities.get(0), entities.get(1));
+
+        Assertions.assertTrue(records.get(2) == records.get(0) || records.get(2) == records.get(1));
+        Assertions.assertTrue(entities.get(2) == entities.get(0) || entities.get(2) == entities.get(1));
+    }
+
+    @Test
+    public void shouldPoolLiteralValues() throws FileNotFoundException {
+        final List<String> values = new ArrayList<>();
+
+        final Metafix metafix = new Metafix("nothing()");
+        metafix.setValuePoolSize(10);
+        metafix.setReceiver(new DefaultStreamReceiver() {
+            @Override
+            public void literal(final String name, final String value) {
+                values.add(value);
+            }
+        });
+
+        for (int i = 0; i < 2; ++i) {
+            metafix.startRecord(String.valueOf(i));
+            metafix.literal("language", new String("ger"));
+            metafix.endRecord();
+        }
+
+        Assertions.assertEquals(Arrays.asList("ger", "ger"), values);
+        Assertions.assertSame(values.get(0), values.get(1));
+    }
+
+    @Test
+    public void shouldFailOnNegativeValuePoolSize() {
+        MetafixTestHelpers.assertThrows(IllegalArgumentException.class, "Value pool size must not be negative: -1", () ->
+                new Metafix().setValuePoolSize(-1)
+        );
+    }
+
+    @Test
+    public void shouldNotEndUnbalancedEntity() throws FileNotFoundException {
+        final Metafix metafix = new Metafix("nothing()");
+        metafix.startRecord("1");
+
+        MetafixTestHelpers.assertThrows(IllegalStateException.class, "Entity starts and ends are not balanced", metafix::endEntity);
+    }
+
+    @Test
+    public void shouldNotEndRecordWithOpenEntity() throws FileNotFoundException {
+        final Metafix metafix = new Metafix("nothing()");
+        metafix.startRecord("1");
+        metafix.startEntity("a");
+
+        MetafixTestHelpers.assertThrows(IllegalStateException.class, "Entity starts and ends are not balanced", metafix::endRecord);
+    }
+
+    @Test
+    public void shouldParseInlineFixInMemory() {
+        final Fix fix = FixStandaloneSetup.parseFix(new StringReader("nothing()"));
+
+        Assertions.assertEquals(FixStandaloneSetup.INLINE_FIX_URI, fix.eResource().getURI().toString());
+        Assertions.assertEquals(1, fix.getElements().size());
+    }
+
+    @Test
+    public void shouldThrowExceptionForInvalidInlineFix() {
+        MetafixTestHelpers.assertThrows(FixParseException.class, "Invalid FixStandaloneSetup resource: " + FixStandaloneSetup.INLINE_FIX_URI,
+                () -> FixStandaloneSetup.parseFix(new StringReader("nothing(")));
+    }
+
     @Test
     // See https://github.com/metafacture/metafacture-fix/issues/79
     public void shouldThrowExceptionForInvalidFixFile() {
@@ -166,4 +395,40 @@ public class MetafixTest {
         // TODO: Test logging statements
     }
 
+    // collects the emitted records and their entities along with the paths of all values
+    private Metafix reusingMetafix(final List<Record> records, final List<Value> entities, final List<String> paths) throws FileNotFoundException {
+        final Metafix metafix = new Metafix("nothing()");
+        metafix.setReuseRecords(true);
+        metafix.setReceiver(new DefaultStreamReceiver() {
+            @Override
+            public void startRecord(final String identifier) {
+                final Record record = metafix.getCurrentRecord();
+
+                records.add(record);
+                paths.add("{" + identifier);
+
+                record.forEach((field, entity) -> {
+                    entities.add(entity);
+                    paths.add(field + "@" + entity.getPath());
+
+                    entity.asHash().forEach((name, value) -> paths.add(name + "@" + value.getPath()));
+                });
+            }
+        });
+
+        return metafix;
+    }
+
+    private void sendRecord(final Metafix metafix, final String identifier, final String entity, final String... literals) {
+        metafix.startRecord(identifier);
+        metafix.startEntity(entity);
+
+        for (final String literal : literals) {
+            metafix.literal(literal, identifier);
+        }
+
+        metafix.endEntity();
+        metafix.endRecord();
+    }
+
 }
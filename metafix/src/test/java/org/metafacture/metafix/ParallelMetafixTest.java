@@ -0,0 +1,189 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.metafacture.framework.StreamReceiver;
+import org.metafacture.framework.helpers.DefaultStreamReceiver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tests parallel record processing.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ParallelMetafixTest {
+
+    private static final int RECORDS = 200;
+    private static final int THREADS = 4;
+
+    @Mock
+    private StreamReceiver streamReceiver;
+
+    public ParallelMetafixTest() {
+    }
+
+    @Test
+    public void shouldTransformRecordsInInputOrder() {
+        final ParallelMetafix metafix = parallelMetafix("copy_field('a', 'b')\nupcase('b')", m -> m.setQueueSize(THREADS));
+        metafix.setReceiver(streamReceiver);
+
+        processRecords(metafix);
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+
+        for (int i = 0; i < RECORDS; ++i) {
+            ordered.verify(streamReceiver).startRecord(String.valueOf(i));
+            ordered.verify(streamReceiver).literal("a", "v" + i);
+            ordered.verify(streamReceiver).literal("b", "V" + i);
+            ordered.verify(streamReceiver).endRecord();
+        }
+
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void shouldTransformRecordsInInputOrderWithPrefetchWindow() {
+        final ParallelMetafix metafix = parallelMetafix("copy_field('a', 'b')\nupcase('b')", m -> {
+            m.setPrefetchWindow(7);
+            m.setReuseRecords(true);
+            m.setValuePoolSize(10);
+        });
+        metafix.setReceiver(streamReceiver);
+
+        processRecords(metafix);
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+
+        for (int i = 0; i < RECORDS; ++i) {
+            ordered.verify(streamReceiver).startRecord(String.valueOf(i));
+            ordered.verify(streamReceiver).literal("a", "v" + i);
+            ordered.verify(streamReceiver).literal("b", "V" + i);
+            ordered.verify(streamReceiver).endRecord();
+        }
+
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void shouldMergeProfilesOfWorkers() {
+        final ParallelMetafix metafix = parallelMetafix("upcase('a')", m -> m.setProfile(true));
+        metafix.setReceiver(streamReceiver);
+
+        processRecords(metafix);
+
+        final List<FixProfiler.Entry> entries = metafix.getProfiler().getEntries();
+
+        Assertions.assertEquals(1, entries.size());
+        Assertions.assertEquals(RECORDS, entries.get(0).getCount());
+    }
+
+    @Test
+    public void shouldTransformAllRecordsUnordered() {
+        final ParallelMetafix metafix = parallelMetafix("upcase('a')", m -> m.setOrdered(false));
+        final List<String> actual = new ArrayList<>();
+
+        metafix.setReceiver(new DefaultStreamReceiver() {
+            @Override
+            public void literal(final String name, final String value) {
+                actual.add(value);
+            }
+        });
+
+        processRecords(metafix);
+
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < RECORDS; ++i) {
+            expected.add("V" + i);
+        }
+
+        Collections.sort(actual);
+        Collections.sort(expected);
+
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldRejectRecordsInParallel() {
+        final ParallelMetafix metafix = parallelMetafix("if any_equal('a', 'v1')\n  reject()\nend", m -> { });
+        metafix.setReceiver(streamReceiver);
+
+        metafix.startRecord("0");
+        metafix.literal("a", "v0");
+        metafix.endRecord();
+        metafix.startRecord("1");
+        metafix.literal("a", "v1");
+        metafix.endRecord();
+        metafix.closeStream();
+
+        final InOrder ordered = Mockito.inOrder(streamReceiver);
+        ordered.verify(streamReceiver).startRecord("0");
+        ordered.verify(streamReceiver).literal("a", "v0");
+        ordered.verify(streamReceiver).endRecord();
+        ordered.verify(streamReceiver).closeStream();
+        ordered.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void shouldPropagateProcessException() {
+        final ParallelMetafix metafix = parallelMetafix("lookup('a', './test.csv')", m -> { });
+        metafix.setReceiver(streamReceiver);
+
+        MetafixTestHelpers.assertProcessException(IllegalArgumentException.class, "Cannot resolve relative path: ./test.csv", () -> {
+            metafix.startRecord("0");
+            metafix.literal("a", "xy");
+            metafix.endRecord();
+            metafix.closeStream();
+        });
+    }
+
+    @Test
+    public void shouldNotAllowNonPositiveNumberOfThreads() {
+        MetafixTestHelpers.assertThrows(IllegalArgumentException.class, "Number of threads must be positive: 0",
+                () -> new ParallelMetafix("nothing()").setThreads(0));
+    }
+
+    private ParallelMetafix parallelMetafix(final String fixDef, final Consumer<ParallelMetafix> consumer) {
+        final ParallelMetafix metafix = new ParallelMetafix(fixDef);
+        metafix.setThreads(THREADS);
+        consumer.accept(metafix);
+        return metafix;
+    }
+
+    private void processRecords(final ParallelMetafix metafix) {
+        for (int i = 0; i < RECORDS; ++i) {
+            metafix.startRecord(String.valueOf(i));
+            metafix.literal("a", "v" + i);
+            metafix.endRecord();
+        }
+
+        metafix.closeStream();
+    }
+
+}
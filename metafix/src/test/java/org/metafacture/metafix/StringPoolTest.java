@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the pool for literal values.
+ */
+public class StringPoolTest {
+
+    private static final String VALUE = "ger";
+
+    public StringPoolTest() {
+    }
+
+    @Test
+    public void shouldPoolStrings() {
+        final StringPool pool = new StringPool(10);
+        final String pooled = pool.intern(new String(VALUE));
+
+        Assertions.assertEquals(VALUE, pooled);
+        Assertions.assertSame(pooled, pool.intern(new String(VALUE)));
+        Assertions.assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void shouldNotPoolNull() {
+        final StringPool pool = new StringPool(10);
+
+        Assertions.assertNull(pool.intern(null));
+        Assertions.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedStrings() {
+        final StringPool pool = new StringPool(2);
+        final String pooled = pool.intern(new String(VALUE));
+
+        for (int i = 0; i < 10; ++i) {
+            pool.intern(String.valueOf(i));
+            Assertions.assertSame(pooled, pool.intern(new String(VALUE)));
+        }
+
+        Assertions.assertEquals(2, pool.size());
+    }
+
+}
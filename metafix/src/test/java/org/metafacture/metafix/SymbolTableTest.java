@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the symbol table for field names.
+ */
+public class SymbolTableTest {
+
+    private static final String FIELD = "245";
+
+    public SymbolTableTest() {
+    }
+
+    @Test
+    public void shouldInternFieldNames() {
+        final SymbolTable symbols = new SymbolTable();
+        final String symbol = symbols.intern(new String(FIELD));
+
+        Assertions.assertEquals(FIELD, symbol);
+        Assertions.assertSame(symbol, symbols.intern(new String(FIELD)));
+        Assertions.assertSame(symbol, symbols.intern(FIELD));
+        Assertions.assertEquals(1, symbols.size());
+    }
+
+    @Test
+    public void shouldPassThroughFieldNamesWhenFull() {
+        final SymbolTable symbols = new SymbolTable(1);
+        final String symbol = symbols.intern("a");
+        final String name = new String(FIELD);
+
+        Assertions.assertSame(symbol, symbols.intern(new String("a")));
+        Assertions.assertSame(name, symbols.intern(name));
+        Assertions.assertNotSame(name, symbols.intern(new String(FIELD)));
+        Assertions.assertEquals(1, symbols.size());
+    }
+
+}
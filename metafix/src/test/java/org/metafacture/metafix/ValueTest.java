@@ -17,6 +17,7 @@
 package org.metafacture.metafix;
 
 import nl.jqno.equalsverifier.EqualsVerifier;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 public class ValueTest {
@@ -33,4 +34,110 @@ public class ValueTest {
             .verify();
     }
 
+    @Test
+    public void shouldCopyStringValue() {
+        final Value value = new Value("v");
+        final Value copy = value.copy();
+
+        Assertions.assertNotSame(value, copy);
+        Assertions.assertEquals(value, copy);
+    }
+
+    @Test
+    public void shouldCopyArrayOnWrite() {
+        final Value value = Value.newArray(a -> a.add(new Value("v")));
+        final Value copy = value.copy();
+
+        Assertions.assertEquals(value, copy);
+
+        copy.asArray().add(new Value("w"));
+        value.asArray().remove(0);
+
+        Assertions.assertEquals(Value.newArray(), value);
+        Assertions.assertEquals(Value.newArray(a -> {
+            a.add(new Value("v"));
+            a.add(new Value("w"));
+        }), copy);
+    }
+
+    @Test
+    public void shouldCopyHashOnWrite() {
+        final Value value = Value.newHash(h -> h.put("k", new Value("v")));
+        final Value copy = value.copy();
+
+        Assertions.assertEquals(value, copy);
+
+        copy.asHash().put("l", new Value("w"));
+
+        Assertions.assertEquals(1, value.asHash().size());
+        Assertions.assertEquals(2, copy.asHash().size());
+
+        value.asHash().removeField("k");
+
+        Assertions.assertTrue(value.asHash().isEmpty());
+        Assertions.assertEquals(new Value("v"), copy.asHash().get("k"));
+    }
+
+    @Test
+    public void shouldCopyNestedValuesOnWrite() {
+        final Record record = new Record();
+        record.put("a", Value.newHash(h -> h.put("k", Value.newHash(n -> n.put("l", Value.newArray(a -> a.add(new Value("v"))))))));
+        record.put("b", record.get("a").copy());
+
+        record.addNested("b.k.l", new Value("w"));
+
+        Assertions.assertEquals(1, record.get("a.k.l").asArray().size());
+        Assertions.assertEquals(2, record.get("b.k.l").asArray().size());
+
+        record.set("a.k.m", new Value("x"));
+
+        Assertions.assertEquals(2, record.get("a.k").asHash().size());
+        Assertions.assertEquals(1, record.get("b.k").asHash().size());
+    }
+
+    @Test
+    public void shouldNotCopyContentsOnRead() {
+        final Value nested = new Value("v");
+        final Value value = Value.newArray(a -> a.add(nested));
+        final Value copy = value.copy();
+
+        Assertions.assertEquals(nested, copy.asArray().get(0));
+        Assertions.assertEquals(1, copy.asArray().stream().count());
+        copy.asArray().forEach(v -> Assertions.assertEquals(nested, v));
+
+        Assertions.assertSame(nested, copy.asArray().peek(0));
+        Assertions.assertSame(nested, value.asArray().peek(0));
+    }
+
+    @Test
+    public void shouldNotModifyOriginalThroughReadValue() {
+        final Value value = Value.newHash(h -> h.put("k", Value.newArray(a -> a.add(new Value("v")))));
+        final Value copy = value.copy();
+
+        copy.asHash().get("k").asArray().add(new Value("w"));
+
+        Assertions.assertEquals(1, value.asHash().get("k").asArray().size());
+    }
+
+    @Test
+    public void shouldBasePathsOfCopiedValuesOnCopy() {
+        final Value value = Value.newHash(h -> h.put("k", Value.newArray(a -> a.add(new Value("v"))))).withPathSet("a");
+        final Value copy = value.copy().withPathSet("b");
+
+        Assertions.assertEquals("b.k.1", copy.asHash().get("k").asArray().get(0).getPath());
+        Assertions.assertEquals("1", value.asHash().get("k").asArray().get(0).getPath());
+    }
+
+    @Test
+    public void shouldNotCopyContentsForLastHolder() {
+        final Value nested = Value.newHash(h -> h.put("l", new Value("v")));
+        final Value value = Value.newHash(h -> h.put("k", nested));
+        final Value copy = value.copy();
+
+        copy.asHash().put("m", new Value("x"));
+
+        Assertions.assertNotSame(nested, copy.asHash().get("k"));
+        Assertions.assertSame(nested, value.asHash().get("k"));
+    }
+
 }
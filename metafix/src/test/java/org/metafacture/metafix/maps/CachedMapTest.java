@@ -0,0 +1,133 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the caching lookup map decorator.
+ */
+public class CachedMapTest {
+
+    private final List<Object> queries = new ArrayList<>();
+
+    private final Map<String, String> map = new HashMap<String, String>() {
+        @Override
+        public String get(final Object key) {
+            queries.add(key);
+            return super.get(key);
+        }
+    };
+
+    public CachedMapTest() {
+        map.put("a", "1");
+        map.put("b", "2");
+        map.put("c", "3");
+    }
+
+    @Test
+    public void shouldQueryMapOnlyOnce() {
+        final CachedMap cachedMap = new CachedMap(map, CachedMap.Policy.LRU, 2, true);
+
+        Assertions.assertEquals("1", cachedMap.get("a"));
+        Assertions.assertEquals("1", cachedMap.get("a"));
+        Assertions.assertEquals("1", cachedMap.getOrDefault("a", "x"));
+
+        assertQueries("a");
+        assertStats(cachedMap, 2, 1, 0, 1);
+    }
+
+    @Test
+    public void shouldCacheMisses() {
+        final CachedMap cachedMap = new CachedMap(map, CachedMap.Policy.LRU, 2, true);
+
+        Assertions.assertNull(cachedMap.get("x"));
+        Assertions.assertEquals("y", cachedMap.getOrDefault("x", "y"));
+        Assertions.assertFalse(cachedMap.containsKey("x"));
+
+        assertQueries("x");
+    }
+
+    @Test
+    public void shouldNotCacheMisses() {
+        final CachedMap cachedMap = new CachedMap(map, CachedMap.Policy.LRU, 2, false);
+
+        Assertions.assertNull(cachedMap.get("x"));
+        Assertions.assertNull(cachedMap.get("x"));
+
+        assertQueries("x", "x");
+        assertStats(cachedMap, 0, 2, 0, 0);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntry() {
+        final CachedMap cachedMap = new CachedMap(map, CachedMap.Policy.LRU, 2, true);
+
+        cachedMap.get("a");
+        cachedMap.get("b");
+        cachedMap.get("a");
+        cachedMap.get("c");
+        cachedMap.get("a");
+        cachedMap.get("b");
+
+        assertQueries("a", "b", "c", "b");
+        assertStats(cachedMap, 2, 4, 2, 2);
+    }
+
+    @Test
+    public void shouldEvictLeastFrequentlyUsedEntry() {
+        final CachedMap cachedMap = new CachedMap(map, CachedMap.Policy.LFU, 2, true);
+
+        cachedMap.get("a");
+        cachedMap.get("a");
+        cachedMap.get("b");
+        cachedMap.get("b");
+        cachedMap.get("a");
+        cachedMap.get("c");
+        cachedMap.get("b");
+        cachedMap.get("a");
+
+        assertQueries("a", "b", "c", "b");
+        assertStats(cachedMap, 4, 4, 2, 2);
+    }
+
+    @Test
+    public void shouldNotAllowNonPositiveSize() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CachedMap(map, CachedMap.Policy.LRU, 0, true));
+    }
+
+    private void assertQueries(final Object... expected) {
+        Assertions.assertEquals(Arrays.asList(expected), queries);
+    }
+
+    private void assertStats(final CachedMap cachedMap, final long hits, final long misses, final long evictions, final long size) {
+        final CachedMap.Stats stats = cachedMap.getStats();
+
+        Assertions.assertEquals(hits, stats.getHitCount());
+        Assertions.assertEquals(misses, stats.getMissCount());
+        Assertions.assertEquals(evictions, stats.getEvictionCount());
+        Assertions.assertEquals(size, stats.getSize());
+    }
+
+}
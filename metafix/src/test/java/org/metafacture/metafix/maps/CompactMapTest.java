@@ -0,0 +1,140 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.MorphExecutionException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the compact lookup map.
+ */
+public class CompactMapTest {
+
+    private static final String CSV_MAP = "src/test/resources/org/metafacture/metafix/maps/test.csv";
+    private static final String TSV_MAP = "src/test/resources/org/metafacture/metafix/maps/test.tsv";
+
+    private static final String PREFIX = "http://d-nb.info/gnd/";
+
+    @TempDir
+    public Path tempDir; // checkstyle-disable-line VisibilityModifier
+
+    public CompactMapTest() {
+    }
+
+    @Test
+    public void shouldLookUpValues() {
+        final CompactMap map = CompactMap.load(CSV_MAP, ",");
+
+        Assertions.assertEquals(3, map.getCount());
+        Assertions.assertEquals("Alohaeha", map.get("Aloha"));
+        Assertions.assertEquals("Moin zäme", map.get("Moin"));
+        Assertions.assertNull(map.get("Hey"));
+        Assertions.assertEquals("Hi", map.getOrDefault("Hey", "Hi"));
+        Assertions.assertTrue(map.containsKey("Aloha"));
+        Assertions.assertFalse(map.containsKey("Hey"));
+    }
+
+    @Test
+    public void shouldLookUpValuesWithSeparator() {
+        Assertions.assertEquals("Alohaeha", CompactMap.load(TSV_MAP, "\t").get("Aloha"));
+    }
+
+    @Test
+    public void shouldKeepLastValueOfRepeatedKeys() throws IOException {
+        final Path file = tempDir.resolve("repeated.csv");
+        Files.write(file, Arrays.asList("b,1", "a,1", "b,2", "c", "a,2", "b,3"), StandardCharsets.UTF_8);
+
+        final CompactMap map = CompactMap.load(file.toString(), ",");
+
+        Assertions.assertEquals(2, map.getCount());
+        Assertions.assertEquals("2", map.get("a"));
+        Assertions.assertEquals("3", map.get("b"));
+        Assertions.assertNull(map.get("c"));
+    }
+
+    @Test
+    public void shouldLookUpAllKeysAcrossBlocks() {
+        final Map<String, String> source = new HashMap<>();
+
+        for (int i = 0; i < CompactMap.BLOCK_SIZE * 10 + 3; ++i) {
+            source.put(PREFIX + i, "value" + i % 7);
+        }
+
+        final CompactMap map = CompactMap.of(source);
+
+        Assertions.assertEquals(source.size(), map.getCount());
+        source.forEach((k, v) -> Assertions.assertEquals(v, map.get(k), k));
+
+        Assertions.assertNull(map.get(PREFIX));
+        Assertions.assertNull(map.get(PREFIX + "1000"));
+        Assertions.assertNull(map.get(PREFIX + "-1"));
+        Assertions.assertNull(map.get("a"));
+        Assertions.assertNull(map.get("zzz"));
+    }
+
+    @Test
+    public void shouldBeSmallerThanKeysAndValues() {
+        final Map<String, String> source = new HashMap<>();
+        long size = 0;
+
+        for (int i = 0; i < 1000; ++i) {
+            final String key = PREFIX + (100000 + i);
+            source.put(key, "Person");
+            size += key.length() + "Person".length();
+        }
+
+        Assertions.assertTrue(CompactMap.of(source).getByteSize() < size / 2);
+    }
+
+    @Test
+    public void shouldCompareKeysByCodePoint() {
+        final Map<String, String> source = new HashMap<>();
+        source.put("￿", "a");
+        source.put("😀", "b");
+        source.put("é", "c");
+        source.put("e", "d");
+
+        final CompactMap map = CompactMap.of(source);
+        source.forEach((k, v) -> Assertions.assertEquals(v, map.get(k)));
+    }
+
+    @Test
+    public void shouldHandleEmptyMap() {
+        final CompactMap map = CompactMap.of(Collections.emptyMap());
+
+        Assertions.assertEquals(0, map.getCount());
+        Assertions.assertNull(map.get("a"));
+    }
+
+    @Test
+    public void shouldFailOnMissingFile() {
+        Assertions.assertThrows(MorphExecutionException.class, () -> CompactMap.load("missing.csv", ","));
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tests the prefix and pattern map matchers.
+ */
+public class MapMatcherTest {
+
+    private final Map<String, String> map = new LinkedHashMap<>();
+
+    public MapMatcherTest() {
+        map.put("1", "one");
+        map.put("12", "twelve");
+        map.put("123", "one-two-three");
+        map.put("2", "two");
+        map.put("__default", "default");
+    }
+
+    @Test
+    public void shouldMatchExactKey() {
+        final MapMatcher matcher = MapMatcher.of(map, MapMatcher.Mode.EXACT);
+
+        Assertions.assertEquals("twelve", matcher.get("12"));
+        Assertions.assertNull(matcher.get("1299"));
+    }
+
+    @Test
+    public void shouldMatchShortestPrefix() {
+        final MapMatcher matcher = MapMatcher.of(map, MapMatcher.Mode.PREFIX);
+
+        Assertions.assertEquals("one", matcher.get("1299"));
+        Assertions.assertEquals("two", matcher.get("2"));
+        Assertions.assertNull(matcher.get("3"));
+        Assertions.assertNull(matcher.get(""));
+    }
+
+    @Test
+    public void shouldMatchLongestPrefix() {
+        final MapMatcher matcher = MapMatcher.of(map, MapMatcher.Mode.LONGEST_PREFIX);
+
+        Assertions.assertEquals("twelve", matcher.get("1299"));
+        Assertions.assertEquals("twelve", matcher.get("12"));
+        Assertions.assertEquals("one-two-three", matcher.get("1234"));
+        Assertions.assertEquals("one", matcher.get("13"));
+        Assertions.assertNull(matcher.get("3"));
+    }
+
+    @Test
+    public void shouldNotMatchDefaultKey() {
+        Assertions.assertNull(MapMatcher.of(map, MapMatcher.Mode.LONGEST_PREFIX).get("__default"));
+        Assertions.assertNull(MapMatcher.of(map, MapMatcher.Mode.REGEX).get("__default"));
+    }
+
+    @Test
+    public void shouldMatchFirstRegex() {
+        final Map<String, String> patterns = new LinkedHashMap<>();
+        patterns.put("a(b)+c", "abc");
+        patterns.put("(?<x>x)y*", "xy");
+        patterns.put("a.*", "a");
+        patterns.put("(?i)q", "q");
+
+        final MapMatcher matcher = MapMatcher.of(patterns, MapMatcher.Mode.REGEX);
+
+        Assertions.assertEquals("abc", matcher.get("abbc"));
+        Assertions.assertEquals("a", matcher.get("abcd"));
+        Assertions.assertEquals("xy", matcher.get("xyy"));
+        Assertions.assertEquals("q", matcher.get("Q"));
+        Assertions.assertNull(matcher.get("zz"));
+    }
+
+    @Test
+    public void shouldMatchRegexWithBackReference() {
+        final Map<String, String> patterns = new LinkedHashMap<>();
+        patterns.put("(a)\\1", "aa");
+        patterns.put("b", "b");
+
+        final MapMatcher matcher = MapMatcher.of(patterns, MapMatcher.Mode.REGEX);
+
+        Assertions.assertEquals("aa", matcher.get("aa"));
+        Assertions.assertEquals("b", matcher.get("b"));
+        Assertions.assertNull(matcher.get("a"));
+    }
+
+    @Test
+    public void shouldCacheMatcherPerMap() {
+        Assertions.assertSame(MapMatcher.of(map, MapMatcher.Mode.PREFIX), MapMatcher.of(map, MapMatcher.Mode.PREFIX));
+        Assertions.assertNotSame(MapMatcher.of(map, MapMatcher.Mode.PREFIX), MapMatcher.of(new HashMap<>(map), MapMatcher.Mode.PREFIX));
+    }
+
+    @Test
+    public void shouldRebuildInvalidatedMatcher() {
+        Assertions.assertNull(MapMatcher.of(map, MapMatcher.Mode.PREFIX).get("3"));
+
+        map.put("3", "three");
+        MapMatcher.invalidate(map);
+
+        Assertions.assertEquals("three", MapMatcher.of(map, MapMatcher.Mode.PREFIX).get("3"));
+    }
+
+    @Test
+    public void shouldMatchPrefixInCompactMap() {
+        final MapMatcher matcher = MapMatcher.of(CompactMap.of(map), MapMatcher.Mode.LONGEST_PREFIX);
+
+        Assertions.assertEquals("twelve", matcher.get("1299"));
+    }
+
+    @Test
+    public void shouldParseMode() {
+        Assertions.assertEquals(MapMatcher.Mode.EXACT, MapMatcher.Mode.of(null));
+        Assertions.assertEquals(MapMatcher.Mode.LONGEST_PREFIX, MapMatcher.Mode.of("longest_prefix"));
+    }
+
+}
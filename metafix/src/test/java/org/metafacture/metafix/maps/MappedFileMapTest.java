@@ -0,0 +1,164 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.MorphExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+/**
+ * Tests the memory-mapped file map.
+ */
+public class MappedFileMapTest {
+
+    private static final String CSV_MAP = "src/test/resources/org/metafacture/metafix/maps/test.csv";
+    private static final String TSV_MAP = "src/test/resources/org/metafacture/metafix/maps/test.tsv";
+
+    private static final String SEPARATOR = ",";
+
+    @TempDir
+    public Path tempDir; // checkstyle-disable-line VisibilityModifier
+
+    private Path indexDir;
+
+    public MappedFileMapTest() {
+    }
+
+    @BeforeEach
+    public void setIndexDir() {
+        indexDir = tempDir.resolve("index");
+        System.setProperty(MappedFileMap.INDEX_DIR_PROPERTY, indexDir.toString());
+    }
+
+    @AfterEach
+    public void clearIndexDir() {
+        System.clearProperty(MappedFileMap.INDEX_DIR_PROPERTY);
+    }
+
+    @Test
+    public void shouldLookUpValues() {
+        final MappedFileMap map = MappedFileMap.open(CSV_MAP, SEPARATOR);
+
+        Assertions.assertEquals(3, map.getCount());
+        Assertions.assertEquals("Alohaeha", map.get("Aloha"));
+        Assertions.assertEquals("Moin zäme", map.get("Moin"));
+        Assertions.assertNull(map.get("Hey"));
+        Assertions.assertEquals("Hi", map.getOrDefault("Hey", "Hi"));
+        Assertions.assertTrue(map.containsKey("Aloha"));
+        Assertions.assertFalse(map.containsKey("Hey"));
+    }
+
+    @Test
+    public void shouldListKeys() {
+        final MappedFileMap map = MappedFileMap.open(CSV_MAP, SEPARATOR);
+
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("Aloha", "Moin", "__default")), map.keySet());
+    }
+
+    @Test
+    public void shouldLookUpValuesWithSeparator() {
+        Assertions.assertEquals("Alohaeha", MappedFileMap.open(TSV_MAP, "\t").get("Aloha"));
+    }
+
+    @Test
+    public void shouldSkipInvalidLinesAndOverrideDuplicateKeys() throws IOException {
+        final MappedFileMap map = MappedFileMap.open(writeMap("a,1\n\nb\nc,2,3\na,4\n,5\n"), SEPARATOR);
+
+        Assertions.assertEquals(2, map.getCount());
+        Assertions.assertEquals("4", map.get("a"));
+        Assertions.assertEquals("5", map.get(""));
+        Assertions.assertNull(map.get("b"));
+        Assertions.assertNull(map.get("c"));
+    }
+
+    @Test
+    public void shouldLookUpManyValues() throws IOException {
+        final int size = 10000;
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < size; ++i) {
+            builder.append("key").append(i).append(SEPARATOR).append("value").append(i).append('\n');
+        }
+
+        final MappedFileMap map = MappedFileMap.open(writeMap(builder.toString()), SEPARATOR);
+
+        Assertions.assertEquals(size, map.getCount());
+
+        for (int i = 0; i < size; ++i) {
+            Assertions.assertEquals("value" + i, map.get("key" + i));
+        }
+
+        Assertions.assertNull(map.get("key" + size));
+    }
+
+    @Test
+    public void shouldReuseIndex() throws IOException {
+        MappedFileMap.open(CSV_MAP, SEPARATOR);
+        final FileTime lastModified = Files.getLastModifiedTime(getIndexFile());
+
+        MappedFileMap.open(CSV_MAP, SEPARATOR);
+
+        Assertions.assertEquals(1, countIndexFiles());
+        Assertions.assertEquals(lastModified, Files.getLastModifiedTime(getIndexFile()));
+    }
+
+    @Test
+    public void shouldRebuildIndexWhenSourceChanges() throws IOException {
+        final String file = writeMap("a,1\n");
+        Assertions.assertEquals("1", MappedFileMap.open(file, SEPARATOR).get("a"));
+
+        writeMap("a,22\n");
+        Assertions.assertEquals("22", MappedFileMap.open(file, SEPARATOR).get("a"));
+
+        Assertions.assertEquals(2, countIndexFiles());
+    }
+
+    @Test
+    public void shouldNotIndexMissingFile() {
+        Assertions.assertThrows(MorphExecutionException.class, () -> MappedFileMap.open(tempDir.resolve("missing.csv").toString(), SEPARATOR));
+    }
+
+    private String writeMap(final String content) throws IOException {
+        return Files.write(tempDir.resolve("map.csv"), content.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private Path getIndexFile() throws IOException {
+        try (Stream<Path> stream = Files.list(indexDir)) {
+            return stream.findFirst().get();
+        }
+    }
+
+    private long countIndexFiles() throws IOException {
+        try (Stream<Path> stream = Files.list(indexDir)) {
+            return stream.filter(p -> p.toString().endsWith(MappedFileMap.INDEX_EXTENSION)).count();
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2022 hbz NRW
+ *
+ * Licensed under the Apache License, Version 2.0 the "License";
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metafacture.metafix.maps;
+
+import org.metafacture.metamorph.api.MorphExecutionException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Tests the shared map registry.
+ */
+public class SharedMapRegistryTest {
+
+    private static final String SEPARATOR = ",";
+
+    @TempDir
+    public Path tempDir; // checkstyle-disable-line VisibilityModifier
+
+    public SharedMapRegistryTest() {
+    }
+
+    @Test
+    public void shouldShareMapContents() throws IOException {
+        final String file = writeMap("a,1\nb,2\n");
+        final int size = SharedMapRegistry.size();
+
+        final SharedMapRegistry.SharedMap map1 = SharedMapRegistry.acquire(file, SEPARATOR, SharedMapRegistry.Backend.HASH);
+        final SharedMapRegistry.SharedMap map2 = SharedMapRegistry.acquire(file, SEPARATOR, SharedMapRegistry.Backend.HASH);
+
+        Assertions.assertTrue(map1.isShared());
+        Assertions.assertEquals(2, map1.getReferences());
+        Assertions.assertEquals(size + 1, SharedMapRegistry.size());
+
+        Assertions.assertEquals("1", map1.get("a"));
+        Assertions.assertEquals("2", map2.get("b"));
+        Assertions.assertEquals("x", map2.getOrDefault("c", "x"));
+
+        map1.close();
+        map1.close();
+
+        Assertions.assertEquals(1, map2.getReferences());
+        Assertions.assertEquals(size + 1, SharedMapRegistry.size());
+
+        map2.close();
+
+        Assertions.assertEquals(0, map2.getReferences());
+        Assertions.assertEquals(size, SharedMapRegistry.size());
+    }
+
+    @Test
+    public void shouldNotShareMapContentsWithDifferentSeparator() throws IOException {
+        final String file = writeMap("a,1\tb\n");
+
+        try (SharedMapRegistry.SharedMap map1 = SharedMapRegistry.acquire(file, SEPARATOR, SharedMapRegistry.Backend.HASH);
+                SharedMapRegistry.SharedMap map2 = SharedMapRegistry.acquire(file, "\t", SharedMapRegistry.Backend.HASH)) {
+            Assertions.assertEquals(1, map1.getReferences());
+            Assertions.assertEquals(1, map2.getReferences());
+
+            Assertions.assertEquals("1\tb", map1.get("a"));
+            Assertions.assertEquals("b", map2.get("a,1"));
+        }
+    }
+
+    @Test
+    public void shouldReloadModifiedFile() throws IOException {
+        final String file = writeMap("a,1\n");
+
+        try (SharedMapRegistry.SharedMap map1 = SharedMapRegistry.acquire(file, SEPARATOR, SharedMapRegistry.Backend.HASH)) {
+            Files.write(tempDir.resolve("map.csv"), "a,2\n".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(tempDir.resolve("map.csv"), FileTime.fromMillis(0L));
+
+            try (SharedMapRegistry.SharedMap map2 = SharedMapRegistry.acquire(file, SEPARATOR, SharedMapRegistry.Backend.HASH)) {
+                Assertions.assertEquals("1", map1.get("a"));
+                Assertions.assertEquals("2", map2.get("a"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldFailOnMissingFile() {
+        Assertions.assertThrows(MorphExecutionException.class, () -> SharedMapRegistry.acquire("missing.csv", SEPARATOR, SharedMapRegistry.Backend.HASH));
+    }
+
+    private String writeMap(final String content) throws IOException {
+        return Files.write(tempDir.resolve("map.csv"), content.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+}